@@ -1,8 +1,12 @@
 package com.pfizer.ai.api;
 
+import java.util.Objects;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -11,11 +15,17 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.pfizer.ai.api.request.AIPromptRequest;
+import com.pfizer.ai.api.response.ConversationSessionResponse;
+import com.pfizer.ai.api.response.StreamFrame;
+import com.pfizer.ai.api.server.StreamFrameCoalescer;
+import com.pfizer.ai.config.StartupWarmUp;
 import com.pfizer.ai.service.AIService;
+import com.pfizer.ai.service.ConversationSessionService;
 
 import jakarta.validation.Valid;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @RestController
 @RequestMapping("/api/ai")
@@ -25,21 +35,49 @@ public class AIBasicApi {
     @Autowired
     @Qualifier("AIServiceImpl")
     private AIService aiService;
+
+    @Autowired
+    private StartupWarmUp startupWarmUp;
+
+    @Autowired
+    private StreamFrameCoalescer streamFrameCoalescer;
+
+    @Autowired
+    private ConversationSessionService conversationSessionService;
     
     @GetMapping(path = "/v1/hello", produces = MediaType.TEXT_PLAIN_VALUE)
     public String hello() {
         return "Hello, AI!";
     }
 
+    @GetMapping(path = "/v1/readiness", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StartupWarmUp.WarmUpReport> readiness() {
+        var report = startupWarmUp.report();
+        return ResponseEntity.status(report.ready() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(report);
+    }
+
+    /**
+     * Starts a conversation for the RAG ask endpoints. The returned id is passed as
+     * {@code sessionId} with every question of the conversation.
+     */
+    @PostMapping(path = "/v1/sessions", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ConversationSessionResponse> createSession() {
+        var session = conversationSessionService.create();
+        return ResponseEntity.status(HttpStatus.CREATED).body(
+                new ConversationSessionResponse(session.id(), conversationSessionService.ttl().toSeconds()));
+    }
+
     @PostMapping(path = "/v1/basic", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
     public Mono<String> basicAI(@RequestBody @Valid AIPromptRequest request) { // Now using Spring's @RequestBody
-        var response = aiService.generateBasicResponse(request.systemPrompt(), request.userPrompt());
-        return Mono.just(response);
+        // Off the event loop, the upstream scheduler may hold the call until there is capacity
+        return Mono.fromCallable(() -> aiService.generateBasicResponse(request.systemPrompt(), request.userPrompt()))
+                .subscribeOn(Schedulers.boundedElastic());
     }
 
     @PostMapping(path = "/v1/basic/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<String> basicStreamAI(@RequestBody @Valid AIPromptRequest request) { // Now using Spring's @RequestBody
+    public Flux<StreamFrame> basicStreamAI(@RequestBody @Valid AIPromptRequest request) { // Now using Spring's @RequestBody
         var response = aiService.streamBasicResponse(request.systemPrompt(), request.userPrompt());
-        return response;
+        return streamFrameCoalescer.frames(response,
+                Objects.toString(request.systemPrompt(), "") + "\n\n" + request.userPrompt());
     }
 }
@@ -1,11 +1,13 @@
 package com.pfizer.ai.api.request;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 
 public record AIPromptRequest (
 
     String systemPrompt,
-    @NotBlank String userPrompt
+    @NotBlank String userPrompt,
+    @Pattern(regexp = "^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$") String sessionId
 
 ) {
 
@@ -0,0 +1,11 @@
+package com.pfizer.ai.api.request;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+public record VectorDeletionRequest(
+        @NotEmpty List<@NotBlank String> sources) {
+
+}
@@ -3,9 +3,11 @@ package com.pfizer.ai.api.request;
 import java.util.List;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 
 public record VectorIndexingRequestFromFilesystem(
         @NotBlank String path,
-        List<String> keywords) {
+        List<String> keywords,
+        @Size(max = 64) String collection) {
 
 }
@@ -4,9 +4,11 @@ import java.util.List;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 
 public record VectorIndexingRequestFromURL(
         @NotBlank @Pattern(regexp = "^(?i)(http|https)://.*$") String url,
-        List<String> keywords) {
+        List<String> keywords,
+        @Size(max = 64) String collection) {
 
 }
@@ -0,0 +1,15 @@
+package com.pfizer.ai.api.request;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+public record VectorIndexingRequestFromURLs(
+        @NotEmpty List<@NotBlank @Pattern(regexp = "^(?i)(http|https)://.*$") String> urls,
+        List<String> keywords,
+        @Size(max = 64) String collection) {
+
+}
@@ -0,0 +1,7 @@
+package com.pfizer.ai.api.response;
+
+public record ConversationSessionResponse(
+        String sessionId,
+        long ttlSeconds) {
+
+}
@@ -0,0 +1,51 @@
+package com.pfizer.ai.api.response;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StreamFrame(
+        String type,
+        String delta,
+        List<Source> sources,
+        Usage usage,
+        String error) {
+
+    public static final String TYPE_DELTA = "delta";
+
+    public static final String TYPE_SOURCES = "sources";
+
+    public static final String TYPE_USAGE = "usage";
+
+    public static final String TYPE_DONE = "done";
+
+    public static final String TYPE_ERROR = "error";
+
+    public record Source(String id, String source, String section, Double score) {
+    }
+
+    public record Usage(int promptTokens, int completionTokens, boolean estimated) {
+    }
+
+    public static StreamFrame delta(String text) {
+        return new StreamFrame(TYPE_DELTA, text, null, null, null);
+    }
+
+    public static StreamFrame sources(List<Source> sources) {
+        return new StreamFrame(TYPE_SOURCES, null, sources, null, null);
+    }
+
+    public static StreamFrame usage(Usage usage) {
+        return new StreamFrame(TYPE_USAGE, null, null, usage, null);
+    }
+
+    public static StreamFrame done() {
+        return new StreamFrame(TYPE_DONE, null, null, null, null);
+    }
+
+    public static StreamFrame error(String message) {
+        return new StreamFrame(TYPE_ERROR, null, null, null, message);
+    }
+
+}
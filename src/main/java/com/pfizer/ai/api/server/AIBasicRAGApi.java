@@ -3,6 +3,7 @@ package com.pfizer.ai.api.server;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -14,6 +15,8 @@ import com.pfizer.ai.api.request.AIPromptRequest;
 import com.pfizer.ai.api.request.BasicIndexingRequestFromFilesystem;
 import com.pfizer.ai.api.request.BasicIndexingRequestFromURL;
 import com.pfizer.ai.api.response.BasicIndexingResponse;
+import com.pfizer.ai.api.response.StreamFrame;
+import com.pfizer.ai.rag.indexing.RAGUploadSpooler;
 import com.pfizer.ai.service.RAGBasicIndexingService;
 import com.pfizer.ai.service.RAGBasicProcessorService;
 
@@ -21,6 +24,9 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/ai/rag/basic")
@@ -33,6 +39,12 @@ public class AIBasicRAGApi {
         @Autowired
         private RAGBasicProcessorService ragProcessorService;
 
+        @Autowired
+        private StreamFrameCoalescer streamFrameCoalescer;
+
+        @Autowired
+        private RAGUploadSpooler uploadSpooler;
+
         @PostMapping(path = "/indexing/document/filesystem", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
         public ResponseEntity<BasicIndexingResponse> indexDocumentFromFilesystem(
                         @RequestBody @Valid BasicIndexingRequestFromFilesystem request) {
@@ -59,20 +71,46 @@ public class AIBasicRAGApi {
                                                                 + " chunks"));
         }
 
+        @PostMapping(path = "/indexing/document/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+        public Mono<ResponseEntity<BasicIndexingResponse>> indexDocumentFromUpload(
+                        @RequestBody Flux<PartEvent> partEvents,
+                        @RequestParam(name = "output-filename", required = true) @NotBlank String outputFilename,
+                        @RequestParam(name = "append", required = false, defaultValue = "false") boolean appendIfFileExists,
+                        @RequestParam(name = "keywords", required = false) List<String> keywords) {
+                return uploadSpooler.spoolFilePart(partEvents, "file")
+                                .publishOn(Schedulers.boundedElastic())
+                                .map(upload -> {
+                                        try {
+                                                return ragIndexingService.indexDocumentFromUpload(
+                                                                upload.file(), outputFilename, appendIfFileExists,
+                                                                keywords);
+                                        } finally {
+                                                uploadSpooler.release(upload);
+                                        }
+                                })
+                                .map(indexedDocuments -> ResponseEntity.ok(
+                                                new BasicIndexingResponse(true,
+                                                                "Document successfully indexed as "
+                                                                                + indexedDocuments.size() + " chunks")));
+        }
+
         @PostMapping(path = "/ask", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
         public Mono<String> basicRAG(@RequestBody @Valid AIPromptRequest request,
                         @RequestParam(name = "filename", required = true) @NotBlank String filenameForCustomContext) {
-                var response = ragProcessorService.generateRAGResponse(request.systemPrompt(),
-                                request.userPrompt(), filenameForCustomContext);
-
-                return Mono.just(response);
+                // Off the event loop, the upstream scheduler may hold the call until there is capacity
+                return Mono.fromCallable(() -> ragProcessorService.generateRAGResponse(request.systemPrompt(),
+                                request.userPrompt(), filenameForCustomContext, request.sessionId()))
+                                .subscribeOn(Schedulers.boundedElastic());
         }
 
         @PostMapping(path = "/ask/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
-        public Flux<String> basicStreamRAG(@RequestBody @Valid AIPromptRequest request,
+        public Flux<StreamFrame> basicStreamRAG(@RequestBody @Valid AIPromptRequest request,
                         @RequestParam(name = "filename", required = true) @NotBlank String filenameForCustomContext) {
-                return ragProcessorService.streamRAGResponse(request.systemPrompt(),
-                                request.userPrompt(), filenameForCustomContext);
+                return Mono.fromCallable(() -> ragProcessorService.streamRAGResponse(request.systemPrompt(),
+                                request.userPrompt(), filenameForCustomContext, request.sessionId()))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .flatMapMany(answer -> streamFrameCoalescer.frames(answer.content(),
+                                                answer.sources(), answer.prompt()));
         }
 
 }
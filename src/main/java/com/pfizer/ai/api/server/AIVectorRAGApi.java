@@ -3,6 +3,7 @@ package com.pfizer.ai.api.server;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -12,19 +13,28 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.pfizer.ai.api.request.AIPromptRequest;
+import com.pfizer.ai.api.request.VectorDeletionRequest;
 import com.pfizer.ai.api.request.VectorIndexingRequestFromFilesystem;
 import com.pfizer.ai.api.request.VectorIndexingRequestFromURL;
+import com.pfizer.ai.api.request.VectorIndexingRequestFromURLs;
 import com.pfizer.ai.api.response.BasicIndexingResponse;
+import com.pfizer.ai.api.response.StreamFrame;
+import com.pfizer.ai.config.UpstreamRequestScheduler;
+import com.pfizer.ai.rag.indexing.RAGUploadSpooler;
 import com.pfizer.ai.service.RAGBasicProcessorService;
 import com.pfizer.ai.service.RAGVectorIndexingService;
 import com.pfizer.ai.service.RAGVectorProcessorService;
+import com.pfizer.ai.service.VectorIndexingResult;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -41,66 +51,150 @@ public class AIVectorRAGApi {
         @Autowired
         private RAGVectorProcessorService ragVectorProcessorService;
 
+        @Autowired
+        private UpstreamRequestScheduler upstreamRequestScheduler;
+
+        @Autowired
+        private RAGUploadSpooler uploadSpooler;
+
+        @Autowired
+        private StreamFrameCoalescer streamFrameCoalescer;
+
+        private static String indexedMessage(VectorIndexingResult indexingResult) {
+                return "Document successfully indexed as " + indexingResult.chunks().size()
+                                + " chunks (" + indexingResult.duplicateChunks()
+                                + " near-duplicates linked, dedup ratio "
+                                + String.format("%.2f", indexingResult.dedupRatio()) + ")";
+        }
+
         @PostMapping(path = "/indexing/document/filesystem", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
         public ResponseEntity<BasicIndexingResponse> indexDocumentFromFilesystem(
                         @RequestBody @Valid VectorIndexingRequestFromFilesystem request) {
-                var indexedDocuments = ragIndexingService.indexDocumentFromFilesystem(
+                var indexingResult = ragIndexingService.indexDocumentFromFilesystem(
                                 request.path(),
+                                request.collection(),
                                 request.keywords());
 
-                return ResponseEntity.ok(
-                                new BasicIndexingResponse(true,
-                                                "Document successfully indexed as " + indexedDocuments.size()
-                                                                + " chunks"));
+                return ResponseEntity.ok(new BasicIndexingResponse(true, indexedMessage(indexingResult)));
         }
 
         @PostMapping(path = "/indexing/document/url", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
         public ResponseEntity<BasicIndexingResponse> indexDocumentFromURL(
                         @RequestBody @Valid VectorIndexingRequestFromURL request) {
-                var indexedDocuments = ragIndexingService.indexDocumentFromURL(
+                var indexingResult = ragIndexingService.indexDocumentFromURL(
                                 request.url(),
+                                request.collection(),
                                 request.keywords());
 
+                if (indexingResult.unchanged()) {
+                        return ResponseEntity.ok(
+                                        new BasicIndexingResponse(true,
+                                                        "Document not modified since last indexing, skipped"));
+                }
+
+                return ResponseEntity.ok(new BasicIndexingResponse(true, indexedMessage(indexingResult)));
+        }
+
+        @PostMapping(path = "/indexing/document/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+        public Mono<ResponseEntity<BasicIndexingResponse>> indexDocumentFromUpload(
+                        @RequestBody Flux<PartEvent> partEvents,
+                        @RequestParam(name = "keywords", required = false) List<String> keywords,
+                        @RequestParam(name = "collection", required = false) @Size(max = 64) String collection,
+                        @RequestParam(name = "source-id", required = false) @Size(max = 256) String sourceId) {
+                return uploadSpooler.spoolFilePart(partEvents, "file")
+                                .publishOn(Schedulers.boundedElastic())
+                                .map(upload -> {
+                                        try {
+                                                var source = ragIndexingService.uploadSource(collection, sourceId,
+                                                                upload.sha256());
+                                                var indexingResult = ragIndexingService.indexDocumentFromUpload(
+                                                                upload.file(), source, collection, keywords);
+
+                                                return ResponseEntity.ok(new BasicIndexingResponse(true,
+                                                                indexedMessage(indexingResult) + " from source "
+                                                                                + source));
+                                        } finally {
+                                                uploadSpooler.release(upload);
+                                        }
+                                });
+        }
+
+        @PostMapping(path = "/indexing/document/urls", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<BasicIndexingResponse> indexDocumentsFromURLs(
+                        @RequestBody @Valid VectorIndexingRequestFromURLs request) {
+                var indexingResults = ragIndexingService.indexDocumentsFromURLs(
+                                request.urls(),
+                                request.collection(),
+                                request.keywords());
+
+                var unchangedDocuments = indexingResults.stream().filter(VectorIndexingResult::unchanged).count();
+                var indexedChunks = indexingResults.stream().mapToInt(result -> result.chunks().size()).sum();
+
+                return ResponseEntity.ok(
+                                new BasicIndexingResponse(true,
+                                                (indexingResults.size() - unchangedDocuments)
+                                                                + " documents successfully indexed as " + indexedChunks
+                                                                + " chunks, " + unchangedDocuments
+                                                                + " not modified since last indexing"));
+        }
+
+        @PostMapping(path = "/indexing/document/delete", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<BasicIndexingResponse> deleteDocuments(
+                        @RequestBody @Valid VectorDeletionRequest request) {
+                var deletedChunks = ragIndexingService.deleteDocuments(request.sources());
+
                 return ResponseEntity.ok(
                                 new BasicIndexingResponse(true,
-                                                "Document successfully indexed as " + indexedDocuments.size()
-                                                                + " chunks"));
+                                                "Deleted " + deletedChunks + " chunks of "
+                                                                + request.sources().size() + " sources"));
         }
 
         @PostMapping(path = "/ask", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
         public Mono<String> basicRAG(@RequestBody @Valid AIPromptRequest request,
                         @RequestParam(name = "filename", required = true) @NotBlank String filenameForCustomContext) {
-                var response = ragProcessorService.generateRAGResponse(request.systemPrompt(),
-                                request.userPrompt(), filenameForCustomContext);
-
-                return Mono.just(response);
+                // Off the event loop, the upstream scheduler may hold the call until there is capacity
+                return Mono.fromCallable(() -> ragProcessorService.generateRAGResponse(request.systemPrompt(),
+                                request.userPrompt(), filenameForCustomContext, request.sessionId()))
+                                .subscribeOn(Schedulers.boundedElastic());
         }
 
         @PostMapping(path = "/ask/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
-        public Flux<String> basicStreamRAG(@RequestBody @Valid AIPromptRequest request,
+        public Flux<StreamFrame> basicStreamRAG(@RequestBody @Valid AIPromptRequest request,
                         @RequestParam(name = "filename", required = true) @NotBlank String filenameForCustomContext) {
-                return ragProcessorService.streamRAGResponse(request.systemPrompt(),
-                                request.userPrompt(), filenameForCustomContext);
+                return Mono.fromCallable(() -> ragProcessorService.streamRAGResponse(request.systemPrompt(),
+                                request.userPrompt(), filenameForCustomContext, request.sessionId()))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .flatMapMany(answer -> streamFrameCoalescer.frames(answer.content(),
+                                                answer.sources(), answer.prompt()));
         }
 
         @PostMapping(path = "/ask-vector", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
         public Mono<String> vectorRAG(@RequestBody @Valid AIPromptRequest request,
-                        @RequestParam(name = "top-k", required = false, defaultValue = "0") int topK) {
-                var response = ragVectorProcessorService.generateRAGResponse(request.systemPrompt(),
-                                request.userPrompt(), topK);
-
-                return Mono.just(response);
+                        @RequestParam(name = "top-k", required = false, defaultValue = "0") int topK,
+                        @RequestParam(name = "collection", required = false) String collection) {
+                return Mono.fromCallable(() -> ragVectorProcessorService.generateRAGResponse(
+                                request.systemPrompt(), request.userPrompt(), collection, topK, request.sessionId()))
+                                .subscribeOn(Schedulers.boundedElastic());
         }
 
         @PostMapping(path = "/ask/stream-vector", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
-        public Flux<String> vectorStreamRAG(@RequestBody @Valid AIPromptRequest request,
-                        @RequestParam(name = "top-k", required = false, defaultValue = "0") int topK) {
-                return ragVectorProcessorService.streamRAGResponse(request.systemPrompt(),
-                                request.userPrompt(), topK);
+        public Flux<StreamFrame> vectorStreamRAG(@RequestBody @Valid AIPromptRequest request,
+                        @RequestParam(name = "top-k", required = false, defaultValue = "0") int topK,
+                        @RequestParam(name = "collection", required = false) String collection) {
+                return Mono.fromCallable(() -> ragVectorProcessorService.streamRAGResponse(
+                                request.systemPrompt(), request.userPrompt(), collection, topK, request.sessionId()))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .flatMapMany(answer -> streamFrameCoalescer.frames(answer.content(),
+                                                answer.sources(), answer.prompt()));
         }
 
         @GetMapping(path = "/diagnostics", produces = MediaType.APPLICATION_JSON_VALUE)
-        public ResponseEntity<Map<String, Object>> getDiagnostics() {
+        public Mono<ResponseEntity<Map<String, Object>>> getDiagnostics() {
+                // Off the event loop, the embedding test goes through the upstream scheduler
+                return Mono.fromCallable(this::diagnostics).subscribeOn(Schedulers.boundedElastic());
+        }
+
+        private ResponseEntity<Map<String, Object>> diagnostics() {
                 Map<String, Object> diagnostics = new HashMap<>();
 
                 try {
@@ -116,6 +210,9 @@ public class AIVectorRAGApi {
                         boolean embeddingsWork = ragVectorProcessorService.testEmbeddings("test embedding generation");
                         diagnostics.put("embeddingsWork", embeddingsWork);
 
+                        // Upstream gateway queueing and throttling
+                        diagnostics.put("upstream", upstreamRequestScheduler.metrics());
+
                         return ResponseEntity.ok(diagnostics);
                 } catch (Exception e) {
                         diagnostics.put("error", e.getMessage());
@@ -0,0 +1,33 @@
+package com.pfizer.ai.api.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.pfizer.ai.service.UnknownSessionException;
+
+/**
+ * Answers every ask and stream endpoint called with an unknown or expired session id with
+ * 410 Gone, so clients know to start a new session with {@code POST /api/ai/v1/sessions}
+ * rather than retry with the same id.
+ */
+@RestControllerAdvice
+public class ConversationSessionExceptionHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConversationSessionExceptionHandler.class);
+
+    @ExceptionHandler(UnknownSessionException.class)
+    public ResponseEntity<ProblemDetail> unknownSession(UnknownSessionException e) {
+        LOG.debug("Rejected request for session {}", e.getSessionId());
+
+        var problem = ProblemDetail.forStatusAndDetail(HttpStatus.GONE,
+                "Unknown or expired session, start a new one with POST /api/ai/v1/sessions");
+        problem.setTitle("Unknown session");
+        return ResponseEntity.status(HttpStatus.GONE).body(problem);
+    }
+
+}
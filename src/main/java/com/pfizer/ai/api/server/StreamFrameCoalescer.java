@@ -0,0 +1,122 @@
+package com.pfizer.ai.api.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.pfizer.ai.api.response.StreamFrame;
+import com.pfizer.ai.rag.indexing.ClinicalSectionTextSplitter;
+import com.pfizer.ai.rag.indexing.RAGNeo4jChunkWriter;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Turns the token fragments streamed by the model into NDJSON frames. Fragments are
+ * coalesced into one delta frame per {@code rag.stream.flush-interval} or per
+ * {@code rag.stream.max-fragments-per-frame} fragments, whichever comes first, so a stream
+ * costs one write and flush per frame instead of one per token. As fragments can be of any
+ * length, a delta longer than {@code rag.stream.max-frame-chars} is split over several frames.
+ * The deltas are preceded by the sources the answer was grounded on and followed by an
+ * estimated usage and a done frame.
+ */
+@Component
+public class StreamFrameCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamFrameCoalescer.class);
+
+    static final String STREAM_FAILED_MESSAGE = "The answer could not be completed, please try again";
+
+    @Value("${rag.stream.flush-interval:50ms}")
+    private Duration flushInterval;
+
+    @Value("${rag.stream.max-fragments-per-frame:32}")
+    private int maxFragmentsPerFrame;
+
+    @Value("${rag.stream.max-frame-chars:2048}")
+    private int maxFrameChars;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public Flux<StreamFrame> frames(Flux<String> fragments, List<Document> sources, String prompt) {
+        return Flux.defer(() -> {
+            var completion = new StringBuilder();
+
+            var sourcesFrame = sources == null || sources.isEmpty()
+                    ? Flux.<StreamFrame>empty()
+                    : Flux.just(StreamFrame.sources(sources.stream().map(StreamFrameCoalescer::toSource).toList()));
+
+            var deltaFrames = fragments
+                    // Fair backpressure, so a slow client holds fragments back instead of overflowing the buffer
+                    .bufferTimeout(Math.max(1, maxFragmentsPerFrame), flushInterval, true)
+                    .map(batch -> String.join("", batch))
+                    .filter(text -> !text.isEmpty())
+                    // Prefetch of one, so the split frames do not request fragments ahead of the client
+                    .flatMapIterable(this::splitToFrameSize, 1)
+                    .doOnNext(completion::append)
+                    .map(StreamFrame::delta);
+
+            // Deferred, the completion is only known once all deltas went out
+            var closingFrames = Flux.defer(() -> Flux.just(
+                    StreamFrame.usage(new StreamFrame.Usage(estimateTokens(prompt),
+                            estimateTokens(completion.toString()), true)),
+                    StreamFrame.done()));
+
+            return Flux.concat(sourcesFrame, deltaFrames, closingFrames)
+                    .onErrorResume(e -> {
+                        // The cause may carry gateway or database internals, it is only logged
+                        LOG.error("Streaming response failed", e);
+                        return Flux.just(StreamFrame.error(STREAM_FAILED_MESSAGE));
+                    });
+        });
+    }
+
+    public Flux<StreamFrame> frames(Flux<String> fragments, String prompt) {
+        return frames(fragments, List.of(), prompt);
+    }
+
+    /**
+     * Splits {@code text} into parts of at most {@code rag.stream.max-frame-chars} characters,
+     * never between the two halves of a surrogate pair.
+     */
+    private List<String> splitToFrameSize(String text) {
+        int maxChars = Math.max(2, maxFrameChars);
+        if (text.length() <= maxChars) {
+            return List.of(text);
+        }
+
+        var parts = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + maxChars);
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            parts.add(text.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+
+    private int estimateTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    private static StreamFrame.Source toSource(Document document) {
+        var metadata = document.getMetadata();
+        return new StreamFrame.Source(
+                document.getId(),
+                Objects.toString(metadata.get(RAGNeo4jChunkWriter.SOURCE_ID_METADATA_KEY), null),
+                Objects.toString(metadata.get(ClinicalSectionTextSplitter.SECTION_METADATA_KEY), null),
+                document.getScore());
+    }
+
+}
@@ -3,10 +3,13 @@ package com.pfizer.ai.config;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestClient;
 
+import com.pfizer.ai.rag.indexing.ClinicalSectionTextSplitter;
+
 @Configuration
 public class AIConfig {
     @Bean("defaultRestClientBuilder")
@@ -19,8 +22,18 @@ public class AIConfig {
         return builder.build();
     }
 
+    /**
+     * Splitter used by both indexing flows: "section" aligns chunks to the sections of
+     * clinical trial documents, "token" cuts plain fixed-size token windows.
+     */
     @Bean
-    TextSplitter textSplitter() {
-        return new TokenTextSplitter();
+    TextSplitter textSplitter(@Value("${rag.indexing.splitter:section}") String splitter,
+            @Value("${rag.indexing.chunk-size:800}") int chunkSize) {
+        return switch (splitter) {
+            case "section" -> new ClinicalSectionTextSplitter(chunkSize);
+            case "token" -> new TokenTextSplitter(chunkSize, 350, 5, 10000, true);
+            default -> throw new IllegalArgumentException(
+                    "Unknown rag.indexing.splitter '" + splitter + "', expected 'section' or 'token'");
+        };
     }
 }
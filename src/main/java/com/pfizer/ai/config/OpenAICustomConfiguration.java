@@ -1,12 +1,27 @@
 package com.pfizer.ai.config;
 
+import java.time.Duration;
+
+import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiEmbeddingProperties;
+import org.springframework.ai.chat.observation.ChatModelObservationConvention;
+import org.springframework.ai.embedding.observation.EmbeddingModelObservationConvention;
 import org.springframework.ai.model.ApiKey;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.micrometer.observation.ObservationRegistry;
 
 
 @Configuration
@@ -30,6 +45,30 @@ public class OpenAICustomConfiguration {
     @Value("${spring.ai.openai.embedding.options.model}")
     private String embeddingModel;
 
+    @Value("${ping.openai.rate-limit.requests-per-minute:500}")
+    private int requestsPerMinute;
+
+    @Value("${ping.openai.rate-limit.tokens-per-minute:200000}")
+    private int tokensPerMinute;
+
+    @Value("${ping.openai.rate-limit.min-concurrency:2}")
+    private int minConcurrency;
+
+    @Value("${ping.openai.rate-limit.max-concurrency:16}")
+    private int maxConcurrency;
+
+    @Value("${ping.openai.rate-limit.bulk-concurrency-share:0.5}")
+    private double bulkConcurrencyShare;
+
+    @Value("${ping.openai.rate-limit.latency-target:10s}")
+    private Duration latencyTarget;
+
+    @Value("${ping.openai.rate-limit.acquire-timeout:2m}")
+    private Duration acquireTimeout;
+
+    @Value("${ping.openai.rate-limit.stream-request-tokens:2000}")
+    private long streamRequestTokens;
+
     @Bean
     public RestTemplate restTemplate() {
         return new RestTemplate();
@@ -40,9 +79,16 @@ public class OpenAICustomConfiguration {
         return new PingFederateTokenProvider(restTemplate, clientId, clientSecret, tokenUrl);
     }
 
+    @Bean
+    public UpstreamRequestScheduler upstreamRequestScheduler() {
+        return new UpstreamRequestScheduler(requestsPerMinute, tokensPerMinute, minConcurrency, maxConcurrency,
+                bulkConcurrencyShare, latencyTarget, acquireTimeout);
+    }
+
     @Bean
     @Primary
-    public OpenAiApi customOpenAiApi(PingFederateTokenProvider tokenProvider) {
+    public OpenAiApi customOpenAiApi(PingFederateTokenProvider tokenProvider,
+            UpstreamRequestScheduler upstreamRequestScheduler) {
         ApiKey customApiKey = new ApiKey() {
             @Override
             public String getValue() {
@@ -51,9 +97,47 @@ public class OpenAICustomConfiguration {
             }
         };
 
+        var rateLimitingFilter = new UpstreamRateLimitingFilter(upstreamRequestScheduler, streamRequestTokens);
+
         return OpenAiApi.builder()
                 .apiKey(customApiKey)
                 .baseUrl(apiBaseUrl)
+                .restClientBuilder(RestClient.builder().requestInterceptor(rateLimitingFilter))
+                .webClientBuilder(WebClient.builder().filter(rateLimitingFilter))
+                .build();
+    }
+
+    /**
+     * The auto-configured models build their own {@code OpenAiApi} from the properties, which
+     * would bypass the PingFederate token and the rate limiting filter, so both models are
+     * built on {@link #customOpenAiApi} instead and the auto-configured ones back off. They
+     * are otherwise wired like the auto-configured ones, with tool calling and observations.
+     */
+    @Bean
+    public OpenAiChatModel openAiChatModel(OpenAiApi openAiApi, OpenAiChatProperties chatProperties,
+            ToolCallingManager toolCallingManager, RetryTemplate retryTemplate,
+            ObjectProvider<ObservationRegistry> observationRegistry,
+            ObjectProvider<ChatModelObservationConvention> observationConvention) {
+        var chatModel = OpenAiChatModel.builder()
+                .openAiApi(openAiApi)
+                .defaultOptions(chatProperties.getOptions())
+                .toolCallingManager(toolCallingManager)
+                .retryTemplate(retryTemplate)
+                .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
                 .build();
+        observationConvention.ifAvailable(chatModel::setObservationConvention);
+        return chatModel;
+    }
+
+    @Bean
+    public OpenAiEmbeddingModel openAiEmbeddingModel(OpenAiApi openAiApi,
+            OpenAiEmbeddingProperties embeddingProperties, RetryTemplate retryTemplate,
+            ObjectProvider<ObservationRegistry> observationRegistry,
+            ObjectProvider<EmbeddingModelObservationConvention> observationConvention) {
+        var embeddingModel = new OpenAiEmbeddingModel(openAiApi, embeddingProperties.getMetadataMode(),
+                embeddingProperties.getOptions(), retryTemplate,
+                observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP));
+        observationConvention.ifAvailable(embeddingModel::setObservationConvention);
+        return embeddingModel;
     }
 }
\ No newline at end of file
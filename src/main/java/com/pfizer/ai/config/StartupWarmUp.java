@@ -0,0 +1,187 @@
+package com.pfizer.ai.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.neo4j.driver.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.pfizer.ai.rag.indexing.RAGTikaDocumentReader;
+import com.pfizer.ai.rag.retrieval.RAGShardedVectorSearch;
+
+/**
+ * Warms up everything the first requests after a deploy would otherwise pay for: the Tika
+ * parser, the tokenizer encoding, the prompt templates, the PingFederate token, the
+ * connection to the gateway, the Neo4j driver pool and the vector indexes. A parse/split/render
+ * cycle over a small bundled PDF runs a few times so the JIT has seen the hot paths, PDFBox
+ * included.
+ *
+ * The server already accepts connections while this runs; the readiness endpoint reports
+ * the application as not ready until it is done, with the time every step took.
+ */
+@Component
+public class StartupWarmUp implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    private static final String SYNTHETIC_DOCUMENT = """
+            A Phase 3 Study of Drug X in Adults With Disease Y
+
+            Inclusion Criteria:
+            1. Age 18 years or older at the screening visit
+            2. Histologically confirmed diagnosis of disease Y
+
+            Exclusion Criteria:
+            - Prior treatment with drug X
+
+            Arms and Interventions
+            Arm A: drug X 10 mg once daily
+            Arm B: matching placebo once daily
+
+            Primary Outcome Measures: Progression-free survival at 12 months
+            """;
+
+    @Autowired
+    private RAGTikaDocumentReader tikaDocumentReader;
+
+    @Autowired
+    private TextSplitter textSplitter;
+
+    @Autowired
+    private PingFederateTokenProvider tokenProvider;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private Driver driver;
+
+    @Autowired
+    private RAGShardedVectorSearch shardedVectorSearch;
+
+    @Value("${rag.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.warmup.document:classpath:warmup/warm-up.pdf}")
+    private Resource warmUpDocument;
+
+    @Value("${rag.warmup.iterations:5}")
+    private int iterations;
+
+    @Value("${rag.warmup.embedding:true}")
+    private boolean warmUpEmbedding;
+
+    @Value("${rag.warmup.fail-on-error:false}")
+    private boolean failOnError;
+
+    @Value("${spring.ai.vectorstore.neo4j.embedding-dimension:1536}")
+    private int embeddingDimension;
+
+    private volatile WarmUpReport report = new WarmUpReport(Status.WARMING_UP, 0, List.of());
+
+    public enum Status {
+        WARMING_UP,
+        READY,
+        FAILED
+    }
+
+    public record StepTiming(String step, long millis, boolean succeeded, String error) {
+    }
+
+    public record WarmUpReport(Status status, long totalMillis, List<StepTiming> steps) {
+
+        public boolean ready() {
+            return status == Status.READY;
+        }
+    }
+
+    public WarmUpReport report() {
+        return report;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            report = new WarmUpReport(Status.READY, 0, List.of());
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        var steps = new ArrayList<StepTiming>();
+
+        var parsed = step(steps, "parse", () -> {
+            List<Document> documents = List.of();
+            for (int i = 0; i < iterations; i++) {
+                documents = tikaDocumentReader.readFrom(warmUpDocument);
+            }
+            return documents;
+        });
+        step(steps, "split", () -> {
+            var documents = parsed != null ? parsed : List.of(new Document(SYNTHETIC_DOCUMENT));
+            for (int i = 0; i < iterations; i++) {
+                textSplitter.split(documents);
+            }
+            return null;
+        });
+        step(steps, "prompt-render", () -> {
+            var template = new PromptTemplate(new ClassPathResource("prompts/rag-basic-template.st"));
+            var model = new HashMap<String, Object>();
+            model.put("customContext", SYNTHETIC_DOCUMENT);
+            model.put("question", "What are the inclusion criteria?");
+            for (int i = 0; i < iterations; i++) {
+                template.render(model);
+            }
+            return null;
+        });
+        step(steps, "access-token", tokenProvider::getAccessToken);
+        if (warmUpEmbedding) {
+            step(steps, "embedding", () -> UpstreamPriority.BULK.call(() -> embeddingModel.embed("warm-up")));
+        }
+        step(steps, "neo4j-connectivity", () -> {
+            driver.verifyConnectivity();
+            return null;
+        });
+        step(steps, "vector-search", () -> {
+            // Any unit vector will do, the point is to load every shard index, not to match anything
+            var probe = new float[embeddingDimension];
+            probe[0] = 1.0f;
+            shardedVectorSearch.queryEveryShard(probe);
+            return null;
+        });
+
+        boolean failed = steps.stream().anyMatch(step -> !step.succeeded());
+        var totalMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        report = new WarmUpReport(failed && failOnError ? Status.FAILED : Status.READY, totalMillis,
+                List.copyOf(steps));
+
+        LOG.info("Warm-up finished in {} ms with status {}: {}", totalMillis, report.status(), steps);
+    }
+
+    private <T> T step(List<StepTiming> steps, String name, Callable<T> action) {
+        long startedAt = System.nanoTime();
+        try {
+            var result = action.call();
+            steps.add(new StepTiming(name, (System.nanoTime() - startedAt) / 1_000_000, true, null));
+            return result;
+        } catch (Exception e) {
+            LOG.warn("Warm-up step {} failed", name, e);
+            steps.add(new StepTiming(name, (System.nanoTime() - startedAt) / 1_000_000, false, e.getMessage()));
+            return null;
+        }
+    }
+
+}
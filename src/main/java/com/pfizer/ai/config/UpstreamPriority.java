@@ -0,0 +1,42 @@
+package com.pfizer.ai.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Priority of calls made to the upstream OpenAI gateway. Calls default to
+ * {@link #INTERACTIVE}; bulk work such as indexing embeddings wraps itself in
+ * {@link #call(Supplier)} so the scheduler can let user-facing requests go first.
+ */
+public enum UpstreamPriority {
+
+    INTERACTIVE,
+    BULK;
+
+    private static final ThreadLocal<UpstreamPriority> CURRENT = new ThreadLocal<>();
+
+    public static UpstreamPriority current() {
+        var priority = CURRENT.get();
+        return priority != null ? priority : INTERACTIVE;
+    }
+
+    public <T> T call(Supplier<T> action) {
+        var previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+}
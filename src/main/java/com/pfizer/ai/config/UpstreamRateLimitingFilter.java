@@ -0,0 +1,99 @@
+package com.pfizer.ai.config;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Routes every call of the OpenAI client through the {@link UpstreamRequestScheduler}, for
+ * both the blocking RestClient (chat calls, embeddings) and the WebClient used for streaming.
+ */
+public class UpstreamRateLimitingFilter implements ClientHttpRequestInterceptor, ExchangeFilterFunction {
+
+    // Rough OpenAI average, good enough to keep the tokens/min bucket honest
+    private static final int BYTES_PER_TOKEN = 4;
+
+    private final UpstreamRequestScheduler scheduler;
+    private final long streamRequestTokens;
+
+    public UpstreamRateLimitingFilter(UpstreamRequestScheduler scheduler, long streamRequestTokens) {
+        this.scheduler = scheduler;
+        this.streamRequestTokens = streamRequestTokens;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        UpstreamRequestScheduler.Permit permit;
+        try {
+            permit = scheduler.acquire(UpstreamPriority.current(), body.length / BYTES_PER_TOKEN);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for upstream capacity");
+        }
+
+        try {
+            var response = execution.execute(request, body);
+            scheduler.release(permit, response.getStatusCode().value(), permit.elapsed(),
+                    retryAfter(response.getHeaders()));
+            return response;
+        } catch (IOException | RuntimeException e) {
+            scheduler.release(permit, -1, permit.elapsed(), null);
+            throw e;
+        }
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        var priority = UpstreamPriority.current();
+
+        return Mono.fromCallable(() -> scheduler.acquire(priority, streamRequestTokens))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(permit -> {
+                    // The slot is held until the streamed body ends, latency is measured to the headers
+                    var latency = new AtomicReference<Duration>();
+                    var status = new AtomicReference<Integer>(-1);
+                    var retryAfter = new AtomicReference<Duration>();
+
+                    return next.exchange(request)
+                            .map(response -> {
+                                latency.set(permit.elapsed());
+                                status.set(response.statusCode().value());
+                                retryAfter.set(retryAfter(response.headers().asHttpHeaders()));
+                                return response.mutate()
+                                        .body(body -> body.doFinally(signal -> scheduler.release(permit,
+                                                status.get(), latency.get(), retryAfter.get())))
+                                        .build();
+                            })
+                            .doOnError(e -> scheduler.release(permit, -1, permit.elapsed(), null))
+                            .doOnCancel(() -> scheduler.release(permit, status.get(),
+                                    latency.get() != null ? latency.get() : permit.elapsed(), retryAfter.get()));
+                });
+    }
+
+    private static Duration retryAfter(HttpHeaders headers) {
+        var value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.pfizer.ai.config;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client-side admission control for the shared OpenAI gateway quota.
+ *
+ * Requests/min and tokens/min are tracked with two token buckets. The number of calls in
+ * flight is capped by a limit that grows additively on fast successes and is halved on
+ * 429s or slow responses (AIMD). Waiting callers are served in priority order, and bulk
+ * callers may only use a share of the current limit and never its last slot, so interactive
+ * calls always find one. The limit therefore never drops below 2.
+ */
+public class UpstreamRequestScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(UpstreamRequestScheduler.class);
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private static final Duration DECREASE_COOLDOWN = Duration.ofSeconds(1);
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double bulkConcurrencyShare;
+    private final Duration latencyTarget;
+    private final Duration acquireTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final Map<UpstreamPriority, ArrayDeque<Ticket>> queues = new EnumMap<>(UpstreamPriority.class);
+    private final Map<UpstreamPriority, Integer> inFlight = new EnumMap<>(UpstreamPriority.class);
+    private final Map<UpstreamPriority, long[]> waitStats = new EnumMap<>(UpstreamPriority.class);
+
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private double concurrencyLimit;
+    private long blockedUntilNanos;
+    private long lastDecreaseNanos;
+    private long throttledResponses;
+    private long acquireTimeouts;
+
+    public UpstreamRequestScheduler(int requestsPerMinute, int tokensPerMinute, int minConcurrency,
+            int maxConcurrency, double bulkConcurrencyShare, Duration latencyTarget, Duration acquireTimeout) {
+        this.requestCapacity = requestsPerMinute;
+        this.tokenCapacity = tokensPerMinute;
+        this.requestsPerNano = requestsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.tokensPerNano = tokensPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.minConcurrency = Math.max(2, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.bulkConcurrencyShare = bulkConcurrencyShare;
+        this.latencyTarget = latencyTarget;
+        this.acquireTimeout = acquireTimeout;
+
+        this.availableRequests = requestCapacity;
+        this.availableTokens = tokenCapacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.concurrencyLimit = this.maxConcurrency;
+        this.blockedUntilNanos = lastRefillNanos;
+        this.lastDecreaseNanos = lastRefillNanos - DECREASE_COOLDOWN.toNanos();
+
+        for (var priority : UpstreamPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            inFlight.put(priority, 0);
+            // {granted, total wait nanos, max wait nanos}
+            waitStats.put(priority, new long[3]);
+        }
+    }
+
+    /**
+     * Blocks until the call may be sent, for up to the acquire timeout, so it must not be called
+     * on an event loop thread. The returned permit must be released exactly once.
+     */
+    public Permit acquire(UpstreamPriority priority, long estimatedTokens) throws InterruptedException {
+        var ticket = new Ticket(priority, Math.min(Math.max(estimatedTokens, 1), (long) tokenCapacity));
+        long enqueuedAt = System.nanoTime();
+        long deadline = enqueuedAt + acquireTimeout.toNanos();
+
+        lock.lock();
+        try {
+            queues.get(priority).addLast(ticket);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+
+                    if (isNext(ticket) && hasCapacity(ticket, now)) {
+                        queues.get(priority).removeFirst();
+                        availableRequests -= 1;
+                        availableTokens -= ticket.tokens;
+                        inFlight.merge(priority, 1, Integer::sum);
+                        recordWait(priority, now - enqueuedAt);
+                        changed.signalAll();
+                        return new Permit(priority, now);
+                    }
+
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        acquireTimeouts++;
+                        throw new IllegalStateException("Timed out after " + acquireTimeout.toMillis()
+                                + " ms waiting for upstream capacity (" + priority + ")");
+                    }
+                    changed.awaitNanos(Math.min(remaining, nanosUntilAvailable(ticket, now)));
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                queues.get(priority).remove(ticket);
+                changed.signalAll();
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the slot taken by {@code permit} and feeds the outcome into the concurrency limit.
+     *
+     * @param statusCode HTTP status of the upstream response, or -1 if the call failed without one
+     * @param latency time until the upstream started answering
+     * @param retryAfter value of the Retry-After header, if any
+     */
+    public void release(Permit permit, int statusCode, Duration latency, Duration retryAfter) {
+        if (!permit.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            inFlight.merge(permit.priority, -1, Integer::sum);
+
+            if (statusCode == 429) {
+                throttledResponses++;
+                var pause = retryAfter != null ? retryAfter : DEFAULT_RETRY_AFTER;
+                blockedUntilNanos = Math.max(blockedUntilNanos, now + pause.toNanos());
+                decrease(now, "429 from upstream");
+            } else if (latency.compareTo(latencyTarget) > 0) {
+                decrease(now, "latency " + latency.toMillis() + " ms above target");
+            } else if (statusCode >= 200 && statusCode < 300) {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+            }
+
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+
+            var metrics = new LinkedHashMap<String, Object>();
+            metrics.put("concurrencyLimit", Math.floor(concurrencyLimit));
+            metrics.put("availableRequests", (long) availableRequests);
+            metrics.put("availableTokens", (long) availableTokens);
+            metrics.put("throttledResponses", throttledResponses);
+            metrics.put("acquireTimeouts", acquireTimeouts);
+
+            for (var priority : UpstreamPriority.values()) {
+                var stats = waitStats.get(priority);
+                var priorityMetrics = new LinkedHashMap<String, Object>();
+                priorityMetrics.put("queueDepth", queues.get(priority).size());
+                priorityMetrics.put("inFlight", inFlight.get(priority));
+                priorityMetrics.put("granted", stats[0]);
+                priorityMetrics.put("avgWaitMs", stats[0] == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(stats[1] / stats[0]));
+                priorityMetrics.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(stats[2]));
+                metrics.put(priority.name().toLowerCase(), priorityMetrics);
+            }
+            return metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isNext(Ticket ticket) {
+        for (var priority : UpstreamPriority.values()) {
+            var queue = queues.get(priority);
+            if (priority == ticket.priority) {
+                return queue.peekFirst() == ticket;
+            }
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasCapacity(Ticket ticket, long now) {
+        if (now < blockedUntilNanos || availableRequests < 1 || availableTokens < ticket.tokens) {
+            return false;
+        }
+
+        int limit = (int) Math.floor(concurrencyLimit);
+        int total = inFlight.values().stream().mapToInt(Integer::intValue).sum();
+        if (total >= limit) {
+            return false;
+        }
+        if (ticket.priority == UpstreamPriority.BULK) {
+            int bulkLimit = Math.min(Math.max(1, (int) Math.floor(limit * bulkConcurrencyShare)), limit - 1);
+            return inFlight.get(UpstreamPriority.BULK) < bulkLimit;
+        }
+        return true;
+    }
+
+    private long nanosUntilAvailable(Ticket ticket, long now) {
+        long wait = Math.max(0, blockedUntilNanos - now);
+        if (availableRequests < 1) {
+            wait = Math.max(wait, (long) ((1 - availableRequests) / requestsPerNano));
+        }
+        if (availableTokens < ticket.tokens) {
+            wait = Math.max(wait, (long) ((ticket.tokens - availableTokens) / tokensPerNano));
+        }
+        // Slots freed by release() signal the condition, so this only bounds bucket refills
+        return Math.max(wait, TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        availableRequests = Math.min(requestCapacity, availableRequests + elapsed * requestsPerNano);
+        availableTokens = Math.min(tokenCapacity, availableTokens + elapsed * tokensPerNano);
+        lastRefillNanos = now;
+    }
+
+    private void decrease(long now, String reason) {
+        if (now - lastDecreaseNanos < DECREASE_COOLDOWN.toNanos()) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        concurrencyLimit = Math.max(minConcurrency, concurrencyLimit * DECREASE_FACTOR);
+        LOG.warn("Reduced upstream concurrency limit to {} ({})", (int) concurrencyLimit, reason);
+    }
+
+    private void recordWait(UpstreamPriority priority, long waitNanos) {
+        var stats = waitStats.get(priority);
+        stats[0]++;
+        stats[1] += waitNanos;
+        stats[2] = Math.max(stats[2], waitNanos);
+    }
+
+    private static final class Ticket {
+        private final UpstreamPriority priority;
+        private final long tokens;
+
+        private Ticket(UpstreamPriority priority, long tokens) {
+            this.priority = priority;
+            this.tokens = tokens;
+        }
+    }
+
+    public static final class Permit {
+        private final UpstreamPriority priority;
+        private final long grantedAtNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(UpstreamPriority priority, long grantedAtNanos) {
+            this.priority = priority;
+            this.grantedAtNanos = grantedAtNanos;
+        }
+
+        public Duration elapsed() {
+            return Duration.ofNanos(System.nanoTime() - grantedAtNanos);
+        }
+    }
+}
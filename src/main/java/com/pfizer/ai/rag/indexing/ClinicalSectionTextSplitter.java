@@ -0,0 +1,301 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+/**
+ * Splits clinical trial documents (protocols, registry records, CSRs) along their sections.
+ *
+ * Headings such as "Inclusion Criteria", "Arms and Interventions" or "Primary Outcome
+ * Measures" start a new chunk, and every chunk carries the section it belongs to in its
+ * metadata. A single keyword followed by a value, like "Dose: 10 mg" or "Safety: weekly
+ * labs", is a field rather than a heading, and nothing inside a table starts a section.
+ * A section that fits in {@code chunkSize} tokens becomes a single chunk; a longer one is
+ * cut between paragraphs or list items, each continuation repeating the heading, and only a
+ * single paragraph that is itself too long falls back to fixed token windows.
+ */
+public class ClinicalSectionTextSplitter extends TextSplitter {
+
+    public static final String SECTION_METADATA_KEY = "section";
+
+    public static final String SECTION_TITLE_METADATA_KEY = "section_title";
+
+    public static final String SECTION_PART_METADATA_KEY = "section_part";
+
+    public static final String SECTION_PARTS_METADATA_KEY = "section_parts";
+
+    /**
+     * Section of the text found before the first recognised heading.
+     */
+    public static final String GENERAL_SECTION = "general";
+
+    private static final int MAX_HEADING_LENGTH = 80;
+
+    // Optional numbering in front of a heading: "5.", "5.1", "A.", "IV.", "Section 5"
+    private static final String HEADING_PREFIX = "^\\s*(?:(?:section|part|appendix)\\s+)?"
+            + "(?:[0-9]+(?:\\.[0-9]+)*\\.?|[A-Z]\\.|[IVX]+\\.)?\\s*";
+
+    private static final List<SectionPattern> SECTION_PATTERNS = List.of(
+            section("inclusion_criteria", "(?:key\\s+)?inclusion\\s+criteria"),
+            section("exclusion_criteria", "(?:key\\s+)?exclusion\\s+criteria"),
+            section("eligibility", "eligibility(?:\\s+criteria)?|study\\s+population"
+                    + "|selection\\s+of\\s+(?:study\\s+)?(?:population|subjects|patients|participants)"),
+            section("arms_interventions", "(?:study\\s+|treatment\\s+)?arms?"
+                    + "(?:\\s+(?:and|&)\\s+interventions?)?|arm\\s+groups?|interventions?"
+                    + "|study\\s+(?:treatments?|drugs?)|investigational\\s+products?"),
+            section("primary_outcomes", "primary\\s+(?:outcome\\s+measures?|outcomes?"
+                    + "|(?:efficacy\\s+)?end\\s*points?)"),
+            section("secondary_outcomes", "secondary\\s+(?:outcome\\s+measures?|outcomes?"
+                    + "|(?:efficacy\\s+)?end\\s*points?)"),
+            section("outcome_measures", "outcome\\s+measures?|end\\s*points?"
+                    + "|efficacy\\s+(?:assessments?|end\\s*points?)"),
+            section("dosing", "dos(?:e|ing|age)(?:\\s+(?:and|&)\\s+administration|\\s+regimens?"
+                    + "|\\s+modifications?|\\s+schedule|\\s+levels?)?|treatment\\s+(?:regimen|schedule)"),
+            section("study_design", "(?:study|trial)\\s+design|design"),
+            section("objectives", "(?:study\\s+|trial\\s+)?objectives?(?:\\s+and\\s+end\\s*points?)?"),
+            section("safety", "safety(?:\\s+assessments?|\\s+monitoring)?|adverse\\s+events?"),
+            section("statistics", "statistical\\s+(?:methods|analys[ie]s|considerations)|sample\\s+size"),
+            section("summary", "(?:brief\\s+)?summary|synopsis|background|introduction|abstract|rationale"));
+
+    // Columns separated by pipes, tabs or at least two runs of spaces, as tables come out of PDFs
+    private static final Pattern TABLE_ROW = Pattern.compile("\\||\\t|(?:\\S {2,}){2}\\S");
+
+    private static final Pattern BLOCK_START = Pattern.compile(
+            "^\\s*(?:[-\\u2022*\\u25aa\\u25cf]|\\(?[0-9]{1,3}[.)]|\\(?[a-z][.)])\\s+");
+
+    private final int chunkSize;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final TokenTextSplitter tokenTextSplitter;
+
+    private record SectionPattern(String section, Pattern pattern) {
+    }
+
+    private record Section(String section, String title, String body) {
+    }
+
+    private record Chunk(String text, String section, String title, int part, int parts) {
+    }
+
+    public ClinicalSectionTextSplitter() {
+        this(800);
+    }
+
+    /**
+     * @param chunkSize target chunk size in tokens
+     */
+    public ClinicalSectionTextSplitter(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.tokenTextSplitter = new TokenTextSplitter(chunkSize, 350, 5, 10000, true);
+    }
+
+    @Override
+    public List<Document> apply(List<Document> documents) {
+        var chunks = new ArrayList<Document>();
+
+        for (var document : documents) {
+            if (document.getText() == null) {
+                continue;
+            }
+            for (var chunk : splitIntoChunks(document.getText())) {
+                var metadata = new HashMap<>(document.getMetadata());
+                metadata.put(SECTION_METADATA_KEY, chunk.section());
+                if (chunk.title() != null) {
+                    metadata.put(SECTION_TITLE_METADATA_KEY, chunk.title());
+                }
+                metadata.put(SECTION_PART_METADATA_KEY, chunk.part());
+                metadata.put(SECTION_PARTS_METADATA_KEY, chunk.parts());
+
+                chunks.add(new Document(chunk.text(), metadata));
+            }
+        }
+
+        return chunks;
+    }
+
+    @Override
+    protected List<String> splitText(String text) {
+        return splitIntoChunks(text).stream().map(Chunk::text).toList();
+    }
+
+    private List<Chunk> splitIntoChunks(String text) {
+        var chunks = new ArrayList<Chunk>();
+
+        for (var section : findSections(text)) {
+            var parts = splitSection(section);
+            for (int i = 0; i < parts.size(); i++) {
+                chunks.add(new Chunk(parts.get(i), section.section(), section.title(), i + 1, parts.size()));
+            }
+        }
+
+        return chunks;
+    }
+
+    private List<Section> findSections(String text) {
+        var sections = new ArrayList<Section>();
+        var currentSection = GENERAL_SECTION;
+        String currentTitle = null;
+        var body = new StringBuilder();
+
+        var lines = text.split("\\R", -1);
+        for (int i = 0; i < lines.length; i++) {
+            var line = lines[i];
+            var heading = isInTable(lines, i) ? null : matchHeading(line);
+            if (heading == null) {
+                body.append(line).append('\n');
+                continue;
+            }
+
+            addSection(sections, currentSection, currentTitle, body);
+            currentSection = heading.section();
+            currentTitle = heading.title();
+            body.setLength(0);
+            if (!heading.body().isEmpty()) {
+                body.append(heading.body()).append('\n');
+            }
+        }
+        addSection(sections, currentSection, currentTitle, body);
+
+        return sections;
+    }
+
+    private static void addSection(List<Section> sections, String section, String title, StringBuilder body) {
+        var text = body.toString().strip();
+        // A heading directly followed by another one ("Eligibility" above "Inclusion Criteria") has no content
+        if (!text.isEmpty()) {
+            sections.add(new Section(section, title, text));
+        }
+    }
+
+    /**
+     * A line that is a table row, or sits between two of them (a row label such as "Safety"
+     * on a line of its own), belongs to the table.
+     */
+    private static boolean isInTable(String[] lines, int index) {
+        if (TABLE_ROW.matcher(lines[index]).find()) {
+            return true;
+        }
+        return index > 0 && index < lines.length - 1
+                && TABLE_ROW.matcher(lines[index - 1]).find() && TABLE_ROW.matcher(lines[index + 1]).find();
+    }
+
+    /**
+     * Returns the section a heading line opens, with the text following "Heading:" on the same
+     * line as body, or {@code null} if the line is no known heading. Text after the colon is
+     * only taken as body under a heading of several words ("Primary Outcome Measures: ..."),
+     * a single keyword followed by a value ("Dose: 10 mg") is a field of the current section.
+     */
+    private static Section matchHeading(String line) {
+        var trimmed = line.strip();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+
+        for (var sectionPattern : SECTION_PATTERNS) {
+            var matcher = sectionPattern.pattern().matcher(trimmed);
+            if (!matcher.matches() || matcher.end("title") > MAX_HEADING_LENGTH) {
+                continue;
+            }
+
+            var rest = matcher.group("rest") != null ? matcher.group("rest").strip() : "";
+            if (!rest.isEmpty() && !matcher.group("title").strip().contains(" ")) {
+                return null;
+            }
+            return new Section(sectionPattern.section(), trimmed.substring(0, matcher.end("title")).strip(), rest);
+        }
+        return null;
+    }
+
+    private List<String> splitSection(Section section) {
+        var heading = section.title() != null ? section.title() + "\n" : "";
+        var text = heading + section.body();
+        if (tokenCountEstimator.estimate(text) <= chunkSize) {
+            return List.of(text);
+        }
+
+        var continuation = section.title() != null ? section.title() + " (continued)\n" : "";
+        int continuationTokens = tokenCountEstimator.estimate(continuation);
+
+        var parts = new ArrayList<String>();
+        var current = new StringBuilder(heading);
+        int currentTokens = tokenCountEstimator.estimate(heading);
+        boolean hasContent = false;
+
+        for (var block : splitIntoBlocks(section.body())) {
+            int blockTokens = tokenCountEstimator.estimate(block);
+
+            if (hasContent && currentTokens + blockTokens > chunkSize) {
+                parts.add(current.toString().strip());
+                current.setLength(0);
+                current.append(continuation);
+                currentTokens = continuationTokens;
+                hasContent = false;
+            }
+
+            if (currentTokens + blockTokens > chunkSize) {
+                // A single paragraph longer than a chunk, cut it into token windows
+                var prefix = current.toString();
+                for (var window : tokenTextSplitter.split(new Document(block))) {
+                    parts.add(prefix + window.getText());
+                    prefix = continuation;
+                }
+                current.setLength(0);
+                current.append(continuation);
+                currentTokens = continuationTokens;
+                continue;
+            }
+
+            current.append(block).append('\n');
+            currentTokens += blockTokens;
+            hasContent = true;
+        }
+
+        if (hasContent) {
+            parts.add(current.toString().strip());
+        }
+
+        return parts;
+    }
+
+    /**
+     * Cuts a section body at blank lines and at the start of list items, so criteria and
+     * table rows stay whole.
+     */
+    private static List<String> splitIntoBlocks(String body) {
+        var blocks = new ArrayList<String>();
+        var block = new StringBuilder();
+
+        for (var line : body.split("\\R")) {
+            if (line.isBlank() || BLOCK_START.matcher(line).find()) {
+                if (!block.toString().isBlank()) {
+                    blocks.add(block.toString().strip());
+                }
+                block.setLength(0);
+            }
+            if (!line.isBlank()) {
+                block.append(line).append('\n');
+            }
+        }
+        if (!block.toString().isBlank()) {
+            blocks.add(block.toString().strip());
+        }
+
+        return blocks;
+    }
+
+    private static SectionPattern section(String section, String headings) {
+        return new SectionPattern(section, Pattern.compile(
+                HEADING_PREFIX + "(?<title>(?:" + headings + "))\\s*(?::\\s*(?<rest>.*))?",
+                Pattern.CASE_INSENSITIVE));
+    }
+
+}
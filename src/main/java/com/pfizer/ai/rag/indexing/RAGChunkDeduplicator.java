@@ -0,0 +1,389 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.neo4j.driver.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Detects near-duplicate chunks before they are embedded. Fingerprints of every stored
+ * chunk are kept in memory, bucketed by 16-bit bands so a lookup only compares against
+ * candidates sharing at least one band, and appended to a small binary file so the index
+ * survives restarts. Chunks are only compared within their collection, since a duplicate
+ * linked to a chunk of another vector shard would be invisible to searches scoped to its own.
+ *
+ * The file can drift from Neo4j (chunks deleted by hand, a restored database), so at startup
+ * fingerprints of chunks that no longer exist are dropped, and a duplicate whose chunk turns
+ * out to be gone at write time is embedded after all and replaces that chunk's fingerprint.
+ */
+@Component
+public class RAGChunkDeduplicator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RAGChunkDeduplicator.class);
+
+    public static final String DUPLICATE_OF_METADATA_KEY = "duplicate_of";
+
+    private static final int BANDS = 4;
+
+    private static final int BAND_BITS = Long.SIZE / BANDS;
+
+    /**
+     * Leads fingerprint files that record the collection of each chunk ("RAGFPv2").
+     */
+    private static final long FILE_MAGIC = 0x5241474650763200L;
+
+    private static final int RECONCILE_BATCH_SIZE = 10000;
+
+    private static final String MISSING_CHUNKS_QUERY = """
+            UNWIND $ids AS id
+            OPTIONAL MATCH (n:`%1$s` {id: id})
+            OPTIONAL MATCH (m:`%2$s` {id: id})
+            WITH id, n, m
+            WHERE n IS NULL AND m IS NULL
+            RETURN id
+            """;
+
+    @Autowired(required = false)
+    private Driver driver;
+
+    @Value("${spring.ai.vectorstore.neo4j.label:Document}")
+    private String label;
+
+    @Value("${rag.indexing.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.indexing.dedup.hamming-threshold:3}")
+    private int hammingThreshold;
+
+    @Value("${rag.indexing.dedup.fingerprint-file:data/chunk-fingerprints.bin}")
+    private String fingerprintFile;
+
+    private final List<Fingerprint> fingerprints = new ArrayList<>();
+
+    private final Map<Integer, List<Fingerprint>> bandIndex = new HashMap<>();
+
+    public record Fingerprint(long value, String chunkId, String source, String collection) {
+    }
+
+    public record DuplicateChunk(Document chunk, String canonicalId, int distance, long fingerprint) {
+    }
+
+    /**
+     * @param staleChunkIds chunks found missing from the store, whose fingerprints are dropped
+     *        when the result is registered
+     */
+    public record DeduplicationResult(String source, String collection, List<Document> uniqueChunks,
+            List<DuplicateChunk> duplicates, List<Fingerprint> newFingerprints, List<String> staleChunkIds) {
+
+        public int totalChunks() {
+            return uniqueChunks.size() + duplicates.size();
+        }
+
+        public double dedupRatio() {
+            return totalChunks() == 0 ? 0.0 : (double) duplicates.size() / totalChunks();
+        }
+
+        /**
+         * Returns this result with the given duplicates turned into unique chunks, for
+         * duplicates that were embedded after all because their canonical chunk was gone.
+         */
+        public DeduplicationResult promote(Collection<String> chunkIds) {
+            if (chunkIds.isEmpty()) {
+                return this;
+            }
+
+            var promotedIds = new HashSet<>(chunkIds);
+            var promotedUniqueChunks = new ArrayList<>(uniqueChunks);
+            var remainingDuplicates = new ArrayList<DuplicateChunk>();
+            var promotedFingerprints = new ArrayList<>(newFingerprints);
+            var missingChunkIds = new ArrayList<>(staleChunkIds);
+
+            for (var duplicate : duplicates) {
+                var chunkId = duplicate.chunk().getId();
+                if (!promotedIds.contains(chunkId)) {
+                    remainingDuplicates.add(duplicate);
+                    continue;
+                }
+                duplicate.chunk().getMetadata().remove(DUPLICATE_OF_METADATA_KEY);
+                promotedUniqueChunks.add(duplicate.chunk());
+                promotedFingerprints.add(new Fingerprint(duplicate.fingerprint(), chunkId, source, collection));
+                missingChunkIds.add(duplicate.canonicalId());
+            }
+
+            return new DeduplicationResult(source, collection, promotedUniqueChunks, remainingDuplicates,
+                    promotedFingerprints, missingChunkIds);
+        }
+    }
+
+    @PostConstruct
+    void loadFingerprints() {
+        // A band shared with a candidate is only guaranteed when fewer bits than bands differ
+        Assert.isTrue(hammingThreshold >= 0 && hammingThreshold < BANDS,
+                "rag.indexing.dedup.hamming-threshold must be between 0 and " + (BANDS - 1));
+
+        var path = Paths.get(fingerprintFile);
+        if (!enabled || !Files.exists(path)) {
+            return;
+        }
+
+        boolean legacyFormat = true;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                long value;
+                try {
+                    value = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (legacyFormat && fingerprints.isEmpty() && value == FILE_MAGIC) {
+                    legacyFormat = false;
+                    continue;
+                }
+                var chunkId = in.readUTF();
+                var source = in.readUTF();
+                index(new Fingerprint(value, chunkId, source, legacyFormat ? "" : in.readUTF()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load chunk fingerprints from " + path, e);
+        }
+
+        if (legacyFormat) {
+            // Files written before collections were recorded hold default shard chunks only
+            writeFingerprints(fingerprints, false);
+        }
+
+        LOG.info("Loaded {} chunk fingerprints from {}", fingerprints.size(), path);
+
+        dropFingerprintsMissingFromStore();
+    }
+
+    private void dropFingerprintsMissingFromStore() {
+        if (driver == null || fingerprints.isEmpty()) {
+            return;
+        }
+
+        var chunkIds = fingerprints.stream().map(Fingerprint::chunkId).toList();
+        var missingChunkIds = new HashSet<String>();
+        try (var session = driver.session()) {
+            for (int from = 0; from < chunkIds.size(); from += RECONCILE_BATCH_SIZE) {
+                var batch = chunkIds.subList(from, Math.min(chunkIds.size(), from + RECONCILE_BATCH_SIZE));
+                missingChunkIds.addAll(session.executeRead(tx -> tx.run(
+                        MISSING_CHUNKS_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL, label), Map.of("ids", batch))
+                        .list(record -> record.get("id").asString())));
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to check chunk fingerprints against Neo4j, keeping all of them", e);
+            return;
+        }
+
+        if (removeFingerprints(fingerprint -> missingChunkIds.contains(fingerprint.chunkId()))) {
+            writeFingerprints(fingerprints, false);
+            LOG.info("Dropped {} fingerprints of chunks no longer in Neo4j", missingChunkIds.size());
+        }
+    }
+
+    /**
+     * Splits chunks into the ones that must be embedded and the ones that are near-duplicates
+     * of an already stored chunk of the same collection or of an earlier chunk of the same job.
+     * Chunks previously stored for {@code source} are ignored, since this job replaces them.
+     * Nothing is recorded until {@link #register(String, DeduplicationResult)} is called after
+     * the store write succeeded.
+     *
+     * @param collection collection the chunks are indexed in, {@code null} for the default one
+     */
+    public synchronized DeduplicationResult deduplicate(List<Document> chunks, String source, String collection) {
+        var uniqueChunks = new ArrayList<Document>();
+        var duplicates = new ArrayList<DuplicateChunk>();
+        var newFingerprints = new ArrayList<Fingerprint>();
+
+        var scope = Objects.toString(collection, "");
+
+        if (!enabled) {
+            return new DeduplicationResult(source, scope, new ArrayList<>(chunks), duplicates, newFingerprints,
+                    List.of());
+        }
+
+        var jobIndex = new HashMap<Integer, List<Fingerprint>>();
+
+        for (var chunk : chunks) {
+            long value = SimHash.fingerprint(chunk.getText());
+
+            var match = findClosest(value, bandIndex, source, scope);
+            var jobMatch = findClosest(value, jobIndex, null, scope);
+            if (match == null || (jobMatch != null
+                    && SimHash.hammingDistance(value, jobMatch.value()) < SimHash.hammingDistance(value, match.value()))) {
+                match = jobMatch;
+            }
+
+            if (match != null) {
+                chunk.getMetadata().put(DUPLICATE_OF_METADATA_KEY, match.chunkId());
+                duplicates.add(new DuplicateChunk(chunk, match.chunkId(), SimHash.hammingDistance(value, match.value()),
+                        value));
+                continue;
+            }
+
+            var fingerprint = new Fingerprint(value, chunk.getId(), source, scope);
+            addToBands(fingerprint, jobIndex);
+            newFingerprints.add(fingerprint);
+            uniqueChunks.add(chunk);
+        }
+
+        return new DeduplicationResult(source, scope, uniqueChunks, duplicates, newFingerprints, List.of());
+    }
+
+    /**
+     * Replaces the fingerprints recorded for {@code source} with the ones of {@code result},
+     * and drops the fingerprints of chunks the write found missing from the store.
+     */
+    public synchronized void register(String source, DeduplicationResult result) {
+        if (!enabled) {
+            return;
+        }
+
+        var staleChunkIds = new HashSet<>(result.staleChunkIds());
+        if (removeFingerprints(fingerprint -> source.equals(fingerprint.source())
+                || staleChunkIds.contains(fingerprint.chunkId()))) {
+            result.newFingerprints().forEach(this::index);
+            writeFingerprints(fingerprints, false);
+        } else {
+            writeFingerprints(result.newFingerprints(), true);
+            result.newFingerprints().forEach(this::index);
+        }
+    }
+
+    /**
+     * Records the fingerprints of near-duplicates that were turned into embedded chunks
+     * because the chunk they pointed at was deleted or changed.
+     */
+    public synchronized void registerPromoted(List<Fingerprint> promoted) {
+        if (!enabled) {
+            return;
+        }
+
+        var promotedIds = new HashSet<String>();
+        promoted.forEach(fingerprint -> promotedIds.add(fingerprint.chunkId()));
+        if (removeFingerprints(fingerprint -> promotedIds.contains(fingerprint.chunkId()))) {
+            promoted.forEach(this::index);
+            writeFingerprints(fingerprints, false);
+        } else {
+            writeFingerprints(promoted, true);
+            promoted.forEach(this::index);
+        }
+    }
+
+    public synchronized void forget(Collection<String> sources) {
+        var removed = new HashSet<String>(sources);
+        if (enabled && removeFingerprints(fingerprint -> removed.contains(fingerprint.source()))) {
+            writeFingerprints(fingerprints, false);
+        }
+    }
+
+    private boolean removeFingerprints(Predicate<Fingerprint> removed) {
+        if (!fingerprints.removeIf(removed)) {
+            return false;
+        }
+
+        bandIndex.clear();
+        fingerprints.forEach(fingerprint -> addToBands(fingerprint, bandIndex));
+        return true;
+    }
+
+    private void writeFingerprints(List<Fingerprint> entries, boolean append) {
+        if (append && entries.isEmpty()) {
+            return;
+        }
+
+        var path = Paths.get(fingerprintFile);
+        append = append && Files.exists(path);
+        var options = append
+                ? new StandardOpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.APPEND }
+                : new StandardOpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE };
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, options)))) {
+                if (!append) {
+                    out.writeLong(FILE_MAGIC);
+                }
+                for (var fingerprint : entries) {
+                    out.writeLong(fingerprint.value());
+                    out.writeUTF(fingerprint.chunkId());
+                    out.writeUTF(fingerprint.source());
+                    out.writeUTF(fingerprint.collection());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to persist chunk fingerprints to " + path, e);
+        }
+    }
+
+    private Fingerprint findClosest(long value, Map<Integer, List<Fingerprint>> bands, String ignoredSource,
+            String collection) {
+        Fingerprint closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+
+        for (int band = 0; band < BANDS; band++) {
+            var candidates = bands.get(bandKey(value, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (var candidate : candidates) {
+                if ((ignoredSource != null && Objects.equals(ignoredSource, candidate.source()))
+                        || !collection.equals(candidate.collection())) {
+                    continue;
+                }
+                int distance = SimHash.hammingDistance(value, candidate.value());
+                if (distance <= hammingThreshold && distance < closestDistance) {
+                    closest = candidate;
+                    closestDistance = distance;
+                }
+            }
+        }
+        return closest;
+    }
+
+    private void index(Fingerprint fingerprint) {
+        fingerprints.add(fingerprint);
+        addToBands(fingerprint, bandIndex);
+    }
+
+    private static void addToBands(Fingerprint fingerprint, Map<Integer, List<Fingerprint>> bands) {
+        for (int band = 0; band < BANDS; band++) {
+            bands.computeIfAbsent(bandKey(fingerprint.value(), band), key -> new ArrayList<>()).add(fingerprint);
+        }
+    }
+
+    private static int bandKey(long value, int band) {
+        int bandValue = (int) ((value >>> (band * BAND_BITS)) & ((1L << BAND_BITS) - 1));
+        return (band << BAND_BITS) | bandValue;
+    }
+
+}
@@ -0,0 +1,350 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.ai.document.Document;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Binary file format for the chunks of the basic RAG flow.
+ *
+ * <pre>
+ * header   : magic "RAGCHNK1"
+ * record*  : int recordLength | int textLength | text (UTF-8) | int metadataLength | metadata (JSON)
+ * footer   : long recordOffset * count | long footerOffset | int count | magic "RAGCIDX1"
+ * </pre>
+ *
+ * Appending writes the new records and a new footer after the old footer, so neither the
+ * existing records nor the footer indexing them are rewritten; the superseded footer stays
+ * behind as unused bytes. If an append does not complete, the file ends in a torn tail and
+ * the last footer that is still intact is used instead, so the store reads as it did before
+ * the append. Readers map the file and decode a chunk only when it is asked for;
+ * a rewrite replaces the file instead of truncating it under them.
+ */
+public final class RAGChunkStore {
+
+    public static final String FILE_EXTENSION = ".chunks";
+
+    private static final byte[] HEADER_MAGIC = "RAGCHNK1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] FOOTER_MAGIC = "RAGCIDX1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + FOOTER_MAGIC.length;
+
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private RAGChunkStore() {
+    }
+
+    public static boolean isChunkStore(String filename) {
+        return filename != null && filename.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * Writes {@code documents} to {@code file}, after the chunks already in it if {@code append}
+     * is set and the file exists.
+     *
+     * A new file is written next to {@code file} and moved over it, never truncated in place, as
+     * a reader that still has the old file mapped would crash with a SIGBUS on the lost pages.
+     */
+    public static void write(Path file, List<Document> documents, boolean append) {
+        try {
+            if (append && Files.exists(file)) {
+                try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    append(channel, file, documents);
+                }
+                return;
+            }
+
+            var temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (var channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    append(channel, temp, documents);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write chunk store " + file, e);
+        }
+    }
+
+    private static void append(FileChannel channel, Path file, List<Document> documents) throws IOException {
+        long[] offsets;
+        long position;
+
+        if (channel.size() == 0) {
+            writeFully(channel, ByteBuffer.wrap(HEADER_MAGIC), 0);
+            offsets = new long[0];
+            position = HEADER_MAGIC.length;
+        } else {
+            var footer = readFooter(channel, file);
+            offsets = footer.offsets();
+            position = footer.end();
+            // Drops the torn tail of an append that did not complete, readers never map past the footer
+            channel.truncate(position);
+        }
+
+        var newOffsets = Arrays.copyOf(offsets, offsets.length + documents.size());
+        int index = offsets.length;
+        for (var document : documents) {
+            newOffsets[index++] = position;
+            position += writeFully(channel, encodeRecord(document), position);
+        }
+        // The records must be on disk before a footer that points at them
+        channel.force(false);
+
+        var footer = ByteBuffer.allocate(newOffsets.length * Long.BYTES + TRAILER_SIZE);
+        for (long offset : newOffsets) {
+            footer.putLong(offset);
+        }
+        footer.putLong(position).putInt(newOffsets.length).put(FOOTER_MAGIC).flip();
+        position += writeFully(channel, footer, position);
+
+        channel.truncate(position);
+        channel.force(false);
+    }
+
+    public static Reader open(Path file) {
+        try {
+            return new Reader(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open chunk store " + file, e);
+        }
+    }
+
+    private static ByteBuffer encodeRecord(Document document) {
+        var text = (document.getText() != null ? document.getText() : "").getBytes(StandardCharsets.UTF_8);
+        byte[] metadata;
+        try {
+            metadata = OBJECT_MAPPER.writeValueAsBytes(document.getMetadata());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode metadata of chunk " + document.getId(), e);
+        }
+
+        int recordLength = Integer.BYTES + text.length + Integer.BYTES + metadata.length;
+        return ByteBuffer.allocate(Integer.BYTES + recordLength)
+                .putInt(recordLength)
+                .putInt(text.length)
+                .put(text)
+                .putInt(metadata.length)
+                .put(metadata)
+                .flip();
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of chunk store at " + (position + read));
+            }
+            read += n;
+        }
+        buffer.flip();
+    }
+
+    private record Footer(long[] offsets, long end) {
+    }
+
+    /**
+     * Reads the footer at the end of the file or, if an append was cut short, the last intact
+     * footer before the torn tail.
+     */
+    private static Footer readFooter(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_MAGIC.length + TRAILER_SIZE) {
+            throw new IOException(file + " is not a chunk store");
+        }
+
+        var header = ByteBuffer.allocate(HEADER_MAGIC.length);
+        readFully(channel, header, 0);
+        if (!Arrays.equals(header.array(), HEADER_MAGIC)) {
+            throw new IOException(file + " is not a chunk store");
+        }
+
+        var footer = footerEndingAt(channel, size);
+        if (footer != null) {
+            return footer;
+        }
+
+        // Scans backwards for the magic of an earlier footer, blocks overlap so none is split
+        var block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+        long blockEnd = size;
+        while (blockEnd >= HEADER_MAGIC.length + TRAILER_SIZE) {
+            long blockStart = Math.max(HEADER_MAGIC.length, blockEnd - SCAN_BLOCK_SIZE);
+            block.clear().limit((int) (blockEnd - blockStart));
+            readFully(channel, block, blockStart);
+
+            for (int i = block.limit() - FOOTER_MAGIC.length; i >= 0; i--) {
+                if (block.get(i) == FOOTER_MAGIC[0]
+                        && block.slice(i, FOOTER_MAGIC.length).equals(ByteBuffer.wrap(FOOTER_MAGIC))) {
+                    footer = footerEndingAt(channel, blockStart + i + FOOTER_MAGIC.length);
+                    if (footer != null) {
+                        return footer;
+                    }
+                }
+            }
+            blockEnd = blockStart + FOOTER_MAGIC.length - 1;
+        }
+        throw new IOException(file + " has no valid chunk store footer");
+    }
+
+    private static Footer footerEndingAt(FileChannel channel, long end) throws IOException {
+        if (end < HEADER_MAGIC.length + TRAILER_SIZE) {
+            return null;
+        }
+
+        var trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        readFully(channel, trailer, end - TRAILER_SIZE);
+
+        long footerOffset = trailer.getLong();
+        int count = trailer.getInt();
+        var magic = new byte[FOOTER_MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, FOOTER_MAGIC) || count < 0 || footerOffset < HEADER_MAGIC.length
+                || footerOffset + (long) count * Long.BYTES + TRAILER_SIZE != end) {
+            return null;
+        }
+
+        var index = ByteBuffer.allocate(count * Long.BYTES);
+        readFully(channel, index, footerOffset);
+
+        var offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = index.getLong();
+            if (offsets[i] < HEADER_MAGIC.length || offsets[i] >= footerOffset) {
+                return null;
+            }
+        }
+        return new Footer(offsets, end);
+    }
+
+    /**
+     * Unmaps a buffer right away instead of whenever it is garbage collected, {@code null} if
+     * the JDK does not expose {@code Unsafe.invokeCleaner}.
+     */
+    private static MethodHandle invokeCleaner() {
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read-only, memory-mapped view of a chunk store. The mapping is released on {@link #close()},
+     * so a reader must not be shared between threads or used once closed.
+     */
+    public static final class Reader implements AutoCloseable {
+
+        private final long[] offsets;
+
+        private MappedByteBuffer buffer;
+
+        private Reader(Path file) throws IOException {
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                var footer = readFooter(channel, file);
+                if (footer.end() > Integer.MAX_VALUE) {
+                    throw new IOException(file + " is too large to be mapped");
+                }
+                this.offsets = footer.offsets();
+                // Only up to the footer, an append may truncate the torn tail after it
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, footer.end());
+            }
+        }
+
+        public int size() {
+            return offsets.length;
+        }
+
+        public String text(int index) {
+            var buffer = buffer();
+            int position = (int) offsets[index] + Integer.BYTES;
+            int textLength = buffer.getInt(position);
+            return StandardCharsets.UTF_8.decode(buffer.slice(position + Integer.BYTES, textLength)).toString();
+        }
+
+        public Map<String, Object> metadata(int index) {
+            var buffer = buffer();
+            int position = (int) offsets[index] + Integer.BYTES;
+            position += Integer.BYTES + buffer.getInt(position);
+            int metadataLength = buffer.getInt(position);
+
+            var metadata = new byte[metadataLength];
+            buffer.get(position + Integer.BYTES, metadata);
+            try {
+                return OBJECT_MAPPER.readValue(metadata, METADATA_TYPE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to decode metadata of chunk " + index, e);
+            }
+        }
+
+        public Document document(int index) {
+            return new Document(text(index), metadata(index));
+        }
+
+        private MappedByteBuffer buffer() {
+            if (buffer == null) {
+                throw new IllegalStateException("Chunk store reader is closed");
+            }
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (buffer == null) {
+                return;
+            }
+            var mapped = buffer;
+            buffer = null;
+            if (INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invokeExact((ByteBuffer) mapped);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Unable to unmap chunk store", e);
+                }
+            }
+        }
+    }
+
+}
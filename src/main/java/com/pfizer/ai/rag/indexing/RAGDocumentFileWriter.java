@@ -1,5 +1,6 @@
 package com.pfizer.ai.rag.indexing;
 
+import java.nio.file.Paths;
 import java.util.List;
 
 import org.springframework.ai.document.Document;
@@ -11,6 +12,11 @@ import org.springframework.stereotype.Component;
 public class RAGDocumentFileWriter {
 
     public void writeDocumentsToFile(List<Document> documents, String filename, boolean appendIfFileExists) {
+        if (RAGChunkStore.isChunkStore(filename)) {
+            RAGChunkStore.write(Paths.get(filename), documents, appendIfFileExists);
+            return;
+        }
+
         var writer = new FileDocumentWriter(filename, true, MetadataMode.ALL, appendIfFileExists);
 
         writer.accept(documents);
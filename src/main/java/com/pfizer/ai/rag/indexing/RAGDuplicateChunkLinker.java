@@ -0,0 +1,58 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.neo4j.driver.TransactionContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records near-duplicate chunks in Neo4j as lightweight nodes pointing at the chunk that
+ * was actually embedded, so their provenance is kept without paying for another vector.
+ * They keep their own text and metadata, so they can be turned into embedded chunks when
+ * the chunk they point at is deleted or changes.
+ * Canonical chunks are looked up by their shard-independent {@code Chunk} label; a duplicate
+ * whose canonical chunk no longer exists is not linked, and left to the caller to embed.
+ */
+@Component
+public class RAGDuplicateChunkLinker {
+
+    private static final String LINK_DUPLICATES_QUERY = """
+            UNWIND $rows AS row
+            MATCH (c:`%s` {id: row.canonicalId})
+            MERGE (d:DuplicateChunk {id: row.id})
+            SET d = row.properties, d.id = row.id, d.source = row.source, d.distance = row.distance
+            WITH c, d
+            OPTIONAL MATCH (d)-[previous:DUPLICATE_OF]->()
+            DELETE previous
+            WITH DISTINCT c, d
+            MERGE (d)-[:DUPLICATE_OF]->(c)
+            RETURN d.id AS id
+            """;
+
+    /**
+     * @return ids of the duplicates that were linked
+     */
+    public Set<String> link(TransactionContext tx, List<RAGChunkDeduplicator.DuplicateChunk> duplicates,
+            String source) {
+        if (duplicates.isEmpty()) {
+            return Set.of();
+        }
+
+        var rows = duplicates.stream()
+                .map(duplicate -> Map.<String, Object>of(
+                        "id", duplicate.chunk().getId(),
+                        "canonicalId", duplicate.canonicalId(),
+                        "source", Objects.toString(source, ""),
+                        "distance", duplicate.distance(),
+                        "properties", RAGNeo4jChunkWriter.properties(duplicate.chunk())))
+                .toList();
+
+        var linked = tx.run(LINK_DUPLICATES_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL), Map.of("rows", rows));
+        return new HashSet<>(linked.list(record -> record.get("id").asString()));
+    }
+
+}
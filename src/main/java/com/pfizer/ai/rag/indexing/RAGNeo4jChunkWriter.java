@@ -0,0 +1,564 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.TransactionContext;
+import org.neo4j.driver.exceptions.RetryableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.pfizer.ai.config.UpstreamPriority;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Writes chunks in the same node layout as {@code Neo4jVectorStore} (id, text,
+ * {@code metadata.*} properties and the embedding vector), keyed by the source they were
+ * read from. Chunk ids are stable, so writing a source again replaces its chunks, and chunks
+ * the new version no longer has are removed in the same transaction.
+ *
+ * Chunks go to the label of the shard their collection is routed to and all carry the
+ * shared {@code Chunk} label, so ids and sources are unique across shards.
+ *
+ * Chunks are embedded and written in UNWIND batches by a small pool of writers, each batch
+ * in its own short transaction, so large documents neither hold one huge transaction open
+ * nor leave embedding and store throughput waiting on each other. Batches are written as
+ * {@code StagedChunk} nodes, outside of any vector index, and only relabeled into their
+ * shard once the whole source is written.
+ *
+ * A near-duplicate is only linked to its canonical chunk if that chunk still exists;
+ * otherwise it is embedded like any other chunk, so its content stays searchable. Likewise,
+ * before a source is deleted or rewritten, near-duplicates of other sources pointing at a
+ * chunk that goes away or whose text changes are promoted to embedded chunks, reusing the
+ * vector of the chunk they pointed at.
+ */
+@Component
+public class RAGNeo4jChunkWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RAGNeo4jChunkWriter.class);
+
+    public static final String SOURCE_ID_METADATA_KEY = "source_id";
+
+    public static final String CHUNK_INDEX_METADATA_KEY = "chunk_index";
+
+    private static final String METADATA_PREFIX = "metadata.";
+
+    private static final String STAGE_CHUNKS_QUERY = """
+            UNWIND $rows AS row
+            MERGE (n:StagedChunk {job: $job, id: row.id})
+            SET n += row.properties, n.staged_at = datetime()
+            WITH row, n
+            CALL db.create.setNodeVectorProperty(n, $embeddingProperty, row.embedding)
+            """;
+
+    private static final String REPLACE_WITH_STAGED_CHUNKS_QUERY = """
+            MATCH (s:StagedChunk {job: $job})
+            MATCH (n:`%1$s` {id: s.id})
+            CALL {
+                WITH s, n
+                MATCH (d:DuplicateChunk)-[r:DUPLICATE_OF]->(n)
+                CREATE (d)-[:DUPLICATE_OF]->(s)
+                DELETE r
+            }
+            DETACH DELETE n
+            """;
+
+    private static final String PUBLISH_STAGED_CHUNKS_QUERY = """
+            MATCH (s:StagedChunk {job: $job})
+            SET s:`%1$s`:`%2$s`
+            REMOVE s:StagedChunk, s.job, s.staged_at
+            """;
+
+    private static final String DISCARD_STAGED_CHUNKS_QUERY = """
+            MATCH (n:StagedChunk {job: $job})
+            CALL { WITH n DETACH DELETE n } IN TRANSACTIONS OF 10000 ROWS
+            """;
+
+    private static final String DISCARD_ABANDONED_STAGED_CHUNKS_QUERY = """
+            MATCH (n:StagedChunk)
+            WHERE n.staged_at < datetime() - duration('P1D')
+            CALL { WITH n DETACH DELETE n } IN TRANSACTIONS OF 10000 ROWS
+            """;
+
+    private static final String EXISTING_CHUNKS_QUERY = """
+            MATCH (n:`%1$s`)
+            WHERE n.id IN $ids
+            RETURN n.id AS id
+            """;
+
+    private static final String DELETE_STALE_CHUNKS_QUERY = """
+            MATCH (n:`%1$s`)
+            WHERE n.`metadata.source_id` = $source AND NOT n.id IN $ids
+            DETACH DELETE n
+            """;
+
+    private static final String LABEL_UNSHARDED_CHUNKS_QUERY = """
+            MATCH (n:`%1$s`)
+            WHERE n.`metadata.source_id` IS NOT NULL AND NOT n:`%2$s`
+            CALL { WITH n SET n:`%2$s` } IN TRANSACTIONS OF 10000 ROWS
+            """;
+
+    private static final String DELETE_STALE_DUPLICATES_QUERY = """
+            MATCH (d:DuplicateChunk {source: $source})
+            WHERE NOT d.id IN $ids
+            DETACH DELETE d
+            """;
+
+    private static final String DELETE_SOURCES_QUERY = """
+            UNWIND $sources AS source
+            MATCH (n:`%1$s`)
+            WHERE n.`metadata.source_id` = source
+            DETACH DELETE n
+            RETURN count(n) AS deleted
+            """;
+
+    private static final String DELETE_SOURCE_DUPLICATES_QUERY = """
+            UNWIND $sources AS source
+            MATCH (d:DuplicateChunk {source: source})
+            DETACH DELETE d
+            """;
+
+    private static final String DEPENDENT_DUPLICATES_QUERY = """
+            MATCH (d:DuplicateChunk)-[:DUPLICATE_OF]->(c:`%1$s`)
+            WHERE c.`metadata.source_id` IN $sources AND NOT d.source IN $sources
+              AND ($texts[c.id] IS NULL OR $texts[c.id] <> c.text)
+            RETURN d.id AS id, [l IN labels(c) WHERE l <> '%1$s'][0] AS shardLabel
+            """;
+
+    private static final String PROMOTE_DUPLICATES_QUERY = """
+            MATCH (d:DuplicateChunk)-[r:DUPLICATE_OF]->(c)
+            WHERE d.id IN $ids
+            SET d:`%1$s`:`%2$s`, d.text = coalesce(d.text, c.text),
+                d.`metadata.source_id` = coalesce(d.`metadata.source_id`, d.source)
+            REMOVE d:DuplicateChunk, d.source, d.distance, d.`metadata.duplicate_of`
+            DELETE r
+            WITH d, c
+            CALL db.create.setNodeVectorProperty(d, $embeddingProperty, c[$embeddingProperty])
+            RETURN d.id AS id, d.text AS text, d.`metadata.source_id` AS source,
+                coalesce(c.`metadata.collection`, '') AS collection
+            """;
+
+    @Autowired
+    private Driver driver;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private RAGDuplicateChunkLinker duplicateChunkLinker;
+
+    @Autowired
+    private RAGChunkDeduplicator chunkDeduplicator;
+
+    @Autowired
+    private RAGVectorShardRouter shardRouter;
+
+    @Value("${spring.ai.vectorstore.neo4j.label:Document}")
+    private String label;
+
+    @Value("${spring.ai.vectorstore.neo4j.embedding-property:embedding}")
+    private String embeddingProperty;
+
+    @Value("${rag.vector.writer.batch-size:200}")
+    private int batchSize;
+
+    @Value("${rag.vector.writer.parallelism:4}")
+    private int parallelism;
+
+    @Value("${rag.vector.writer.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${rag.vector.writer.retry-backoff:500ms}")
+    private Duration retryBackoff;
+
+    private final TokenCountBatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+
+    private ExecutorService writerPool;
+
+    /**
+     * @param promotedChunkIds duplicates that were embedded because their canonical chunk was gone
+     */
+    public record WriteStats(int rows, int batches, Duration elapsed, List<String> promotedChunkIds) {
+
+        public double rowsPerSecond() {
+            return rows * 1000.0 / Math.max(1, elapsed.toMillis());
+        }
+    }
+
+    @PostConstruct
+    void initialize() {
+        createSourceIndexes();
+
+        var threadCount = new AtomicInteger();
+        writerPool = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            var thread = new Thread(runnable, "neo4j-chunk-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopWriterPool() {
+        writerPool.shutdownNow();
+    }
+
+    private void createSourceIndexes() {
+        try (var session = driver.session()) {
+            session.executeWriteWithoutResult(tx -> tx.run(
+                    "CREATE INDEX chunk_id IF NOT EXISTS FOR (n:`%s`) ON (n.id)"
+                            .formatted(RAGVectorShardRouter.CHUNK_LABEL)));
+            session.executeWriteWithoutResult(tx -> tx.run(
+                    "CREATE INDEX chunk_source IF NOT EXISTS FOR (n:`%s`) ON (n.`metadata.source_id`)"
+                            .formatted(RAGVectorShardRouter.CHUNK_LABEL)));
+            session.executeWriteWithoutResult(tx -> tx.run(
+                    "CREATE INDEX duplicate_chunk_source IF NOT EXISTS FOR (d:DuplicateChunk) ON (d.source)"));
+            session.executeWriteWithoutResult(tx -> tx.run(
+                    "CREATE INDEX staged_chunk_job IF NOT EXISTS FOR (n:StagedChunk) ON (n.job)"));
+        } catch (Exception e) {
+            LOG.warn("Unable to create source indexes, deletes by source will scan all chunks", e);
+        }
+
+        // Chunks written before sharding only carry the default shard label
+        try (var session = driver.session()) {
+            session.run(LABEL_UNSHARDED_CHUNKS_QUERY.formatted(label, RAGVectorShardRouter.CHUNK_LABEL)).consume();
+        } catch (Exception e) {
+            LOG.warn("Unable to label existing chunks, they will not be replaced or deleted by source", e);
+        }
+
+        // Jobs that died without discarding their staged chunks
+        try (var session = driver.session()) {
+            session.run(DISCARD_ABANDONED_STAGED_CHUNKS_QUERY).consume();
+        } catch (Exception e) {
+            LOG.warn("Unable to discard abandoned staged chunks", e);
+        }
+    }
+
+    /**
+     * Embeds {@code chunks} into the shard of {@code collection} and replaces everything
+     * previously stored for {@code source}, in any shard, with them and with the given
+     * near-duplicate links, embedding the duplicates whose canonical chunk no longer exists.
+     * Chunks are embedded and staged batch by batch in parallel, invisible to searches, then
+     * swapped in, with links rewritten and stale chunks removed, in a final transaction. Readers
+     * see either the old or the new version, and a failed job only discards its staged chunks.
+     */
+    public WriteStats replaceSource(String source, String collection, List<Document> chunks,
+            List<RAGChunkDeduplicator.DuplicateChunk> duplicates) {
+        long startedAt = System.nanoTime();
+        var priority = UpstreamPriority.current();
+        var shard = shardRouter.ensureShard(collection);
+        var job = UUID.randomUUID().toString();
+
+        var orphanedDuplicates = orphanedDuplicates(chunks, duplicates);
+        var linkedDuplicates = duplicates.stream()
+                .filter(duplicate -> !orphanedDuplicates.contains(duplicate))
+                .toList();
+        var chunksToWrite = new ArrayList<>(chunks);
+        orphanedDuplicates.forEach(duplicate -> chunksToWrite.add(withoutDuplicateOf(duplicate.chunk())));
+
+        var batches = new ArrayList<List<Document>>();
+        for (int from = 0; from < chunksToWrite.size(); from += batchSize) {
+            batches.add(chunksToWrite.subList(from, Math.min(chunksToWrite.size(), from + batchSize)));
+        }
+
+        var texts = new HashMap<String, String>();
+        chunksToWrite.forEach(chunk -> texts.put(chunk.getId(), chunk.getText()));
+        var promoted = new ArrayList<RAGChunkDeduplicator.Fingerprint>();
+        var linkedIds = new HashSet<String>();
+        try {
+            stage(batches, job, priority);
+
+            withRetry(() -> {
+                try (var session = driver.session()) {
+                    session.executeWriteWithoutResult(tx -> {
+                        promoted.clear();
+                        promoted.addAll(promoteDependents(tx, List.of(source), texts));
+                        publishStaged(tx, job, shard);
+
+                        var linked = duplicateChunkLinker.link(tx, linkedDuplicates, source);
+                        linkedIds.clear();
+                        linkedIds.addAll(linked);
+                        // Duplicates whose canonical chunk vanished since the check are embedded below
+                        var chunkIds = new ArrayList<>(texts.keySet());
+                        linkedDuplicates.stream().map(duplicate -> duplicate.chunk().getId())
+                                .filter(id -> !linked.contains(id))
+                                .forEach(chunkIds::add);
+                        tx.run(DELETE_STALE_CHUNKS_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL),
+                                Map.of("source", source, "ids", chunkIds));
+                        tx.run(DELETE_STALE_DUPLICATES_QUERY, Map.of("source", source, "ids", List.copyOf(linked)));
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            discardStaged(job);
+            throw e;
+        }
+        registerPromoted(source, promoted);
+
+        var promotedChunkIds = new ArrayList<String>();
+        orphanedDuplicates.forEach(duplicate -> promotedChunkIds.add(duplicate.chunk().getId()));
+        var unlinkedChunks = linkedDuplicates.stream()
+                .filter(duplicate -> !linkedIds.contains(duplicate.chunk().getId()))
+                .map(duplicate -> withoutDuplicateOf(duplicate.chunk()))
+                .toList();
+        if (!unlinkedChunks.isEmpty()) {
+            try {
+                stage(List.of(unlinkedChunks), job, priority);
+                withRetry(() -> {
+                    try (var session = driver.session()) {
+                        session.executeWriteWithoutResult(tx -> publishStaged(tx, job, shard));
+                    }
+                });
+            } catch (RuntimeException e) {
+                discardStaged(job);
+                throw e;
+            }
+            unlinkedChunks.forEach(chunk -> promotedChunkIds.add(chunk.getId()));
+        }
+        if (!promotedChunkIds.isEmpty()) {
+            LOG.info("Embedded {} near-duplicate chunks of {} whose canonical chunk no longer exists",
+                    promotedChunkIds.size(), source);
+        }
+
+        var stats = new WriteStats(chunksToWrite.size() + unlinkedChunks.size(), batches.size(),
+                Duration.ofNanos(System.nanoTime() - startedAt), promotedChunkIds);
+        LOG.info("Wrote {} chunks of {} to {} in {} batches in {} ms ({} rows/s)", stats.rows(), source,
+                shard.indexName(), stats.batches(), stats.elapsed().toMillis(),
+                String.format("%.1f", stats.rowsPerSecond()));
+
+        return stats;
+    }
+
+    /**
+     * Embeds and writes the batches in parallel as staged chunks of {@code job}.
+     */
+    private void stage(List<List<Document>> batches, String job, UpstreamPriority priority) {
+        var aborted = new AtomicBoolean();
+        var writes = batches.stream()
+                .map(batch -> CompletableFuture.runAsync(() -> {
+                    // The job is discarded once a batch failed, so the remaining ones are skipped
+                    if (aborted.get()) {
+                        return;
+                    }
+                    try {
+                        priority.run(() -> writeBatch(batch, job));
+                    } catch (RuntimeException e) {
+                        aborted.set(true);
+                        throw e;
+                    }
+                }, writerPool))
+                .toList();
+        try {
+            // Only completes once every batch has finished or been skipped
+            CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Replaces the chunks with the ids of the staged chunks of {@code job}, moving the links
+     * of their near-duplicates over, and makes the staged chunks visible in {@code shard}.
+     */
+    private void publishStaged(TransactionContext tx, String job, RAGVectorShardRouter.Shard shard) {
+        tx.run(REPLACE_WITH_STAGED_CHUNKS_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL), Map.of("job", job));
+        tx.run(PUBLISH_STAGED_CHUNKS_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL, shard.label()),
+                Map.of("job", job));
+    }
+
+    private void discardStaged(String job) {
+        try (var session = driver.session()) {
+            session.run(DISCARD_STAGED_CHUNKS_QUERY, Map.of("job", job)).consume();
+        } catch (Exception e) {
+            LOG.warn("Unable to discard staged chunks of job {}, they will be removed at the next startup", job, e);
+        }
+    }
+
+    /**
+     * Removes all chunks and near-duplicate links of the given sources, whatever shard they
+     * are in, in a single transaction. Near-duplicates of other sources pointing at these
+     * chunks are promoted to embedded chunks first.
+     *
+     * @return number of embedded chunks deleted
+     */
+    public int deleteSources(List<String> sources) {
+        var promoted = new ArrayList<RAGChunkDeduplicator.Fingerprint>();
+        int deleted;
+        try (var session = driver.session()) {
+            deleted = session.executeWrite(tx -> {
+                promoted.clear();
+                promoted.addAll(promoteDependents(tx, sources, Map.of()));
+                var deletedRows = tx.run(DELETE_SOURCES_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL),
+                        Map.of("sources", sources))
+                        .list(record -> record.get("deleted").asInt())
+                        .stream().mapToInt(Integer::intValue).sum();
+                tx.run(DELETE_SOURCE_DUPLICATES_QUERY, Map.of("sources", sources));
+                return deletedRows;
+            });
+        }
+        registerPromoted(String.join(", ", sources), promoted);
+        return deleted;
+    }
+
+    /**
+     * Promotes the near-duplicates of other sources whose canonical chunk belongs to
+     * {@code sources} and is about to be deleted, or rewritten with another text than in
+     * {@code texts}. They keep their own text and metadata and get the vector of the chunk
+     * they pointed at, which embeds a near-identical text.
+     *
+     * @return fingerprints of the promoted chunks
+     */
+    private List<RAGChunkDeduplicator.Fingerprint> promoteDependents(TransactionContext tx, List<String> sources,
+            Map<String, String> texts) {
+        var idsByShardLabel = new HashMap<String, List<String>>();
+        tx.run(DEPENDENT_DUPLICATES_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL),
+                Map.of("sources", sources, "texts", texts))
+                .forEachRemaining(record -> idsByShardLabel
+                        .computeIfAbsent(record.get("shardLabel").asString(), key -> new ArrayList<>())
+                        .add(record.get("id").asString()));
+
+        var promoted = new ArrayList<RAGChunkDeduplicator.Fingerprint>();
+        idsByShardLabel.forEach((shardLabel, ids) -> promoted.addAll(tx.run(
+                PROMOTE_DUPLICATES_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL, shardLabel),
+                Map.of("ids", ids, "embeddingProperty", embeddingProperty))
+                .list(record -> new RAGChunkDeduplicator.Fingerprint(
+                        SimHash.fingerprint(record.get("text").asString()), record.get("id").asString(),
+                        record.get("source").asString(), record.get("collection").asString()))));
+        return promoted;
+    }
+
+    private void registerPromoted(String source, List<RAGChunkDeduplicator.Fingerprint> promoted) {
+        if (promoted.isEmpty()) {
+            return;
+        }
+        chunkDeduplicator.registerPromoted(promoted);
+        LOG.info("Embedded {} near-duplicate chunks of other sources that pointed at chunks of {}",
+                promoted.size(), source);
+    }
+
+    /**
+     * Returns the duplicates whose canonical chunk is neither stored nor part of this write.
+     */
+    private List<RAGChunkDeduplicator.DuplicateChunk> orphanedDuplicates(List<Document> chunks,
+            List<RAGChunkDeduplicator.DuplicateChunk> duplicates) {
+        if (duplicates.isEmpty()) {
+            return List.of();
+        }
+
+        var writtenIds = new HashSet<String>();
+        chunks.forEach(chunk -> writtenIds.add(chunk.getId()));
+        var canonicalIds = duplicates.stream()
+                .map(RAGChunkDeduplicator.DuplicateChunk::canonicalId)
+                .filter(id -> !writtenIds.contains(id))
+                .distinct()
+                .toList();
+        if (canonicalIds.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> existingIds;
+        try (var session = driver.session()) {
+            existingIds = new HashSet<>(session.executeRead(tx -> tx.run(
+                    EXISTING_CHUNKS_QUERY.formatted(RAGVectorShardRouter.CHUNK_LABEL), Map.of("ids", canonicalIds))
+                    .list(record -> record.get("id").asString())));
+        }
+
+        return duplicates.stream()
+                .filter(duplicate -> !writtenIds.contains(duplicate.canonicalId())
+                        && !existingIds.contains(duplicate.canonicalId()))
+                .toList();
+    }
+
+    private static Document withoutDuplicateOf(Document chunk) {
+        var metadata = new HashMap<>(chunk.getMetadata());
+        metadata.remove(RAGChunkDeduplicator.DUPLICATE_OF_METADATA_KEY);
+        return new Document(chunk.getId(), chunk.getText(), metadata);
+    }
+
+    private void writeBatch(List<Document> batch, String job) {
+        var rows = toRows(batch, embed(batch));
+
+        withRetry(() -> {
+            try (var session = driver.session()) {
+                session.executeWriteWithoutResult(tx -> tx.run(
+                        STAGE_CHUNKS_QUERY, Map.of("rows", rows, "job", job, "embeddingProperty", embeddingProperty)));
+            }
+        });
+    }
+
+    /**
+     * Managed transactions already retry transient failures for a while; this adds a few
+     * spaced-out attempts on top so a leader switch or a busy cluster does not fail a whole job.
+     */
+    private void withRetry(Runnable write) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                write.run();
+                return;
+            } catch (RuntimeException e) {
+                if (!(e instanceof RetryableException) || attempt > maxRetries) {
+                    throw e;
+                }
+                LOG.warn("Transient Neo4j error on write attempt {}, retrying", attempt, e);
+                try {
+                    Thread.sleep(retryBackoff.toMillis() * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<float[]> embed(List<Document> chunks) {
+        var embeddings = new ArrayList<float[]>(chunks.size());
+        for (var batch : batchingStrategy.batch(chunks)) {
+            embeddings.addAll(embeddingModel.embed(batch.stream().map(Document::getText).toList()));
+        }
+        return embeddings;
+    }
+
+    private static List<Map<String, Object>> toRows(List<Document> chunks, List<float[]> embeddings) {
+        var rows = new ArrayList<Map<String, Object>>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            var chunk = chunks.get(i);
+            rows.add(Map.of("id", chunk.getId(), "properties", properties(chunk), "embedding", embeddings.get(i)));
+        }
+        return rows;
+    }
+
+    /**
+     * Text and {@code metadata.*} properties of a chunk node.
+     */
+    static Map<String, Object> properties(Document chunk) {
+        var properties = new HashMap<String, Object>();
+        properties.put("text", chunk.getText());
+        chunk.getMetadata().forEach((key, value) -> {
+            if (value != null) {
+                properties.put(METADATA_PREFIX + key, value);
+            }
+        });
+        return properties;
+    }
+
+}
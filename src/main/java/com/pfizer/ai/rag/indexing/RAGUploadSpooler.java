@@ -0,0 +1,143 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Streams uploaded documents from the request body straight into the spool directory, buffer
+ * by buffer, so even large PDFs never sit in the heap as a whole. The SHA-256 of the content is
+ * computed on the way, so an upload can be identified by what it contains rather than by the
+ * filename the client happened to send.
+ */
+@Component
+public class RAGUploadSpooler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RAGUploadSpooler.class);
+
+    @Value("${rag.indexing.spool-dir:data/spool}")
+    private String spoolDir;
+
+    @Value("${rag.indexing.upload.max-size:500MB}")
+    private DataSize maxSize;
+
+    public record SpooledUpload(String filename, Path file, String sha256) {
+    }
+
+    /**
+     * Spools the file part named {@code partName} of a multipart request. Content of any other
+     * part is released unread.
+     */
+    public Mono<SpooledUpload> spoolFilePart(Flux<PartEvent> partEvents, String partName) {
+        return partEvents
+                .windowUntil(PartEvent::isLast)
+                .concatMap(part -> part.switchOnFirst((signal, events) -> {
+                    if (signal.hasValue() && signal.get() instanceof FilePartEvent filePartEvent
+                            && partName.equals(filePartEvent.name())) {
+                        return spool(events.map(PartEvent::content), filePartEvent.filename());
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content()))
+                            .then(Mono.<SpooledUpload>empty());
+                }))
+                .collectList()
+                .flatMap(uploads -> {
+                    if (uploads.isEmpty()) {
+                        return Mono.error(new IllegalArgumentException(
+                                "Multipart request has no '" + partName + "' file part"));
+                    }
+                    uploads.stream().skip(1).forEach(this::release);
+                    return Mono.just(uploads.get(0));
+                });
+    }
+
+    /**
+     * Writes {@code content} to a new spool file, failing once more than
+     * {@code rag.indexing.upload.max-size} bytes arrived.
+     */
+    public Mono<SpooledUpload> spool(Flux<DataBuffer> content, String filename) {
+        var spoolFile = Mono.fromCallable(() -> {
+            var directory = Files.createDirectories(Paths.get(spoolDir));
+            return Files.createTempFile(directory, "upload-", suffixOf(filename));
+        });
+
+        return spoolFile.subscribeOn(Schedulers.boundedElastic())
+                .flatMap(file -> {
+                    var received = new AtomicLong();
+                    var digest = sha256();
+                    var limitedContent = content.handle((DataBuffer buffer, SynchronousSink<DataBuffer> sink) -> {
+                        if (received.addAndGet(buffer.readableByteCount()) > maxSize.toBytes()) {
+                            DataBufferUtils.release(buffer);
+                            sink.error(new IllegalArgumentException(
+                                    "Upload " + filename + " exceeds the maximum size of " + maxSize));
+                        } else {
+                            // Leaves the read position alone, so the buffer is still written in full
+                            try (var byteBuffers = buffer.readableByteBuffers()) {
+                                byteBuffers.forEachRemaining(digest::update);
+                            }
+                            sink.next(buffer);
+                        }
+                    });
+
+                    return DataBufferUtils.write(limitedContent, file, StandardOpenOption.WRITE)
+                            .then(Mono.fromCallable(() -> {
+                                LOG.info("Spooled upload {} ({} bytes) to {}", filename, received.get(), file);
+                                return new SpooledUpload(filename, file, HexFormat.of().formatHex(digest.digest()));
+                            }))
+                            .doOnCancel(() -> deleteQuietly(file))
+                            .onErrorResume(e -> Mono.fromRunnable(() -> deleteQuietly(file))
+                                    .then(Mono.<SpooledUpload>error(e)));
+                });
+    }
+
+    public void release(SpooledUpload upload) {
+        deleteQuietly(upload.file());
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete spool file {}", file, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String suffixOf(String filename) {
+        if (filename == null) {
+            return null;
+        }
+        // Client-provided, so only a plain extension makes it into the spool file name
+        int dot = filename.lastIndexOf('.');
+        var suffix = dot > 0 ? filename.substring(dot) : "";
+        return suffix.matches("\\.[A-Za-z0-9]{1,5}") ? suffix : null;
+    }
+
+}
@@ -0,0 +1,333 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Downloads documents to be indexed into a local spool directory.
+ *
+ * Bodies are streamed to disk with connect/read timeouts, a deadline for the whole download
+ * and a size limit. ETag and Last-Modified of every indexed URL are remembered along with how
+ * it was indexed, so a conditional GET can tell that a source has not changed and the whole
+ * parse/embed/write cycle can be skipped.
+ */
+@Component
+public class RAGUrlFetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RAGUrlFetcher.class);
+
+    private static final String ETAG_SUFFIX = ".etag";
+
+    private static final String LAST_MODIFIED_SUFFIX = ".last-modified";
+
+    private static final String INDEXED_AS_SUFFIX = ".indexed-as";
+
+    @Value("${rag.indexing.spool-dir:data/spool}")
+    private String spoolDir;
+
+    @Value("${rag.indexing.fetch.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    @Value("${rag.indexing.fetch.read-timeout:2m}")
+    private Duration readTimeout;
+
+    @Value("${rag.indexing.fetch.download-timeout:10m}")
+    private Duration downloadTimeout;
+
+    @Value("${rag.indexing.fetch.max-size:200MB}")
+    private DataSize maxSize;
+
+    @Value("${rag.indexing.fetch.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${rag.indexing.fetch.validators-file:data/url-validators.properties}")
+    private String validatorsFile;
+
+    private final Properties validators = new Properties();
+
+    private HttpClient httpClient;
+
+    private ExecutorService fetchPool;
+
+    private ScheduledExecutorService deadlineScheduler;
+
+    public enum FetchStatus {
+        FETCHED,
+        NOT_MODIFIED
+    }
+
+    public record FetchResult(String url, FetchStatus status, Path file, long bytes, String etag,
+            String lastModified, String indexedAs) {
+
+        public boolean unchanged() {
+            return status == FetchStatus.NOT_MODIFIED;
+        }
+    }
+
+    @PostConstruct
+    void initialize() throws IOException {
+        var threadCount = new AtomicInteger();
+        fetchPool = Executors.newFixedThreadPool(Math.max(1, maxConcurrency), runnable -> {
+            var thread = new Thread(runnable, "url-fetcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "url-fetcher-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        Files.createDirectories(Paths.get(spoolDir));
+
+        var path = Paths.get(validatorsFile);
+        if (Files.exists(path)) {
+            try (var in = Files.newInputStream(path)) {
+                validators.load(in);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fetchPool.shutdownNow();
+        deadlineScheduler.shutdownNow();
+    }
+
+    /**
+     * Downloads {@code url} to a spool file owned by the caller.
+     *
+     * @param indexedAs how the content is going to be indexed (collection, keywords...); the
+     *        stored validators are only sent, and a 304 answer accepted, if the last committed
+     *        version was indexed the same way. {@code null} always downloads.
+     */
+    public FetchResult fetch(String url, String indexedAs) {
+        long deadline = System.nanoTime() + downloadTimeout.toNanos();
+        var requestBuilder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .GET();
+
+        synchronized (validators) {
+            if (indexedAs != null && indexedAs.equals(validators.getProperty(url + INDEXED_AS_SUFFIX))) {
+                var etag = validators.getProperty(url + ETAG_SUFFIX);
+                var lastModified = validators.getProperty(url + LAST_MODIFIED_SUFFIX);
+                if (etag != null) {
+                    requestBuilder.header("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    requestBuilder.header("If-Modified-Since", lastModified);
+                }
+            }
+        }
+
+        try {
+            var response = httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            var etag = response.headers().firstValue("ETag").orElse(null);
+            var lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+            try (var body = response.body()) {
+                if (response.statusCode() == 304) {
+                    LOG.info("{} not modified since last indexing, skipping download", url);
+                    return new FetchResult(url, FetchStatus.NOT_MODIFIED, null, 0, etag, lastModified, indexedAs);
+                }
+                if (response.statusCode() / 100 != 2) {
+                    throw new IllegalArgumentException("Unable to fetch " + url + ": HTTP " + response.statusCode());
+                }
+
+                var contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                if (contentLength > maxSize.toBytes()) {
+                    throw new IllegalArgumentException(url + " exceeds the maximum size of " + maxSize);
+                }
+
+                var file = Files.createTempFile(Paths.get(spoolDir), "fetch-", suffixOf(url));
+                try {
+                    long bytes = copyBeforeDeadline(body, file, url, deadline);
+                    LOG.info("Fetched {} ({} bytes) to {}", url, bytes, file);
+                    return new FetchResult(url, FetchStatus.FETCHED, file, bytes, etag, lastModified, indexedAs);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to fetch " + url, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching " + url, e);
+        }
+    }
+
+    /**
+     * Fetches all URLs concurrently, at most {@code rag.indexing.fetch.max-concurrency} at a time.
+     * Results are in the order of {@code urls}; if any fetch fails the downloaded files are removed.
+     */
+    public List<FetchResult> fetchAll(List<String> urls, String indexedAs) {
+        var fetches = urls.stream()
+                .map(url -> CompletableFuture.supplyAsync(() -> fetch(url, indexedAs), fetchPool))
+                .toList();
+
+        try {
+            return fetches.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            fetches.forEach(fetch -> fetch.thenAccept(this::release));
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Remembers the validators of a fetched URL and how it was indexed. Call once its content
+     * has been indexed, so a failed indexing job is retried in full next time.
+     */
+    public void commit(FetchResult result) {
+        if (result.unchanged()) {
+            return;
+        }
+
+        synchronized (validators) {
+            validators.remove(result.url() + ETAG_SUFFIX);
+            validators.remove(result.url() + LAST_MODIFIED_SUFFIX);
+            validators.remove(result.url() + INDEXED_AS_SUFFIX);
+            if ((result.etag() != null || result.lastModified() != null) && result.indexedAs() != null) {
+                validators.setProperty(result.url() + INDEXED_AS_SUFFIX, result.indexedAs());
+            }
+            if (result.etag() != null) {
+                validators.setProperty(result.url() + ETAG_SUFFIX, result.etag());
+            }
+            if (result.lastModified() != null) {
+                validators.setProperty(result.url() + LAST_MODIFIED_SUFFIX, result.lastModified());
+            }
+            storeValidators();
+        }
+    }
+
+    public void forget(Collection<String> urls) {
+        synchronized (validators) {
+            boolean changed = false;
+            for (var url : urls) {
+                changed |= validators.remove(url + ETAG_SUFFIX) != null;
+                changed |= validators.remove(url + LAST_MODIFIED_SUFFIX) != null;
+                changed |= validators.remove(url + INDEXED_AS_SUFFIX) != null;
+            }
+            if (changed) {
+                storeValidators();
+            }
+        }
+    }
+
+    public void release(FetchResult result) {
+        if (result.file() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(result.file());
+        } catch (IOException e) {
+            LOG.warn("Unable to delete spool file {}", result.file(), e);
+        }
+    }
+
+    /**
+     * Copies the body to {@code file} within the size limit. The request timeout only covers
+     * the wait for the response headers, so the body is closed once {@code deadline} passes,
+     * which also wakes up a read blocked on a stalled connection.
+     */
+    private long copyBeforeDeadline(InputStream body, Path file, String url, long deadline) throws IOException {
+        var expired = new AtomicBoolean();
+        var timer = deadlineScheduler.schedule(() -> {
+            expired.set(true);
+            try {
+                body.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close the body of {}", url, e);
+            }
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+        long limit = maxSize.toBytes();
+        long total = 0;
+        var buffer = new byte[64 * 1024];
+
+        try (var out = Files.newOutputStream(file)) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total += read;
+                if (total > limit) {
+                    throw new IllegalArgumentException(url + " exceeds the maximum size of " + maxSize);
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            if (expired.get()) {
+                throw new HttpTimeoutException(url + " was not downloaded within " + downloadTimeout);
+            }
+            throw e;
+        } finally {
+            timer.cancel(false);
+        }
+        return total;
+    }
+
+    private void storeValidators() {
+        var path = Paths.get(validatorsFile);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (var out = Files.newOutputStream(path)) {
+                validators.store(out, "ETag and Last-Modified of indexed URLs");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to persist URL validators to " + path, e);
+        }
+    }
+
+    private static String suffixOf(String url) {
+        String path;
+        try {
+            path = URI.create(url).getPath();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (path == null) {
+            return null;
+        }
+        // Decoded from the URL, so only a plain extension makes it into the spool file name
+        var name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        var suffix = dot > 0 ? name.substring(dot) : "";
+        return suffix.matches("\\.[A-Za-z0-9]{1,5}") ? suffix : null;
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.driver.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Maps a collection (typically a study id) to its own vector index shard. Chunks without a
+ * collection go to the default shard, which is the index managed by {@code Neo4jVectorStore}.
+ * Every other collection gets its own label and vector index, so scoped searches only touch
+ * the chunks of that collection and each index stays small as the corpus grows. A shard is
+ * named after the collection, lower-cased with other characters than letters and digits
+ * replaced, followed by a hash of the exact name, so collections that only differ in case or
+ * punctuation, like {@code NCT-01} and {@code NCT_01}, never share a shard.
+ *
+ * The shards of an unscoped search are listed from Neo4j at most once per
+ * {@code rag.vector.shards.refresh-interval}, and again after this instance created a shard,
+ * so searches do not pay for {@code SHOW VECTOR INDEXES} each time. Shards created by other
+ * instances show up with the next refresh.
+ */
+@Component
+public class RAGVectorShardRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RAGVectorShardRouter.class);
+
+    /**
+     * Label carried by chunks of every shard, used for lookups by id or source across shards.
+     */
+    public static final String CHUNK_LABEL = "Chunk";
+
+    private static final String CREATE_SHARD_INDEX_QUERY = """
+            CREATE VECTOR INDEX `%s` IF NOT EXISTS
+            FOR (n:`%s`) ON (n.`%s`)
+            OPTIONS {indexConfig: {`vector.dimensions`: %d, `vector.similarity_function`: '%s'}}
+            """;
+
+    private static final String LIST_SHARD_INDEXES_QUERY = """
+            SHOW VECTOR INDEXES YIELD name, labelsOrTypes
+            WHERE name STARTS WITH $prefix
+            RETURN name, labelsOrTypes[0] AS label
+            """;
+
+    @Autowired
+    private Driver driver;
+
+    @Value("${spring.ai.vectorstore.neo4j.label:Document}")
+    private String label;
+
+    @Value("${spring.ai.vectorstore.neo4j.index-name:spring-ai-document-index}")
+    private String indexName;
+
+    @Value("${spring.ai.vectorstore.neo4j.embedding-property:embedding}")
+    private String embeddingProperty;
+
+    @Value("${spring.ai.vectorstore.neo4j.embedding-dimension:1536}")
+    private int embeddingDimension;
+
+    @Value("${spring.ai.vectorstore.neo4j.distance-type:cosine}")
+    private String distanceType;
+
+    @Value("${rag.vector.shards.refresh-interval:5m}")
+    private Duration refreshInterval;
+
+    private final Map<String, Shard> knownShards = new ConcurrentHashMap<>();
+
+    // System.nanoTime() of the last listing, null until the shards were listed successfully
+    private volatile Long shardsListedAt;
+
+    public record Shard(String collection, String label, String indexName) {
+
+        public boolean isDefault() {
+            return collection == null;
+        }
+    }
+
+    public Shard defaultShard() {
+        return new Shard(null, label, indexName);
+    }
+
+    /**
+     * Resolves the shard of {@code collection} without creating anything.
+     */
+    public Shard route(String collection) {
+        if (!StringUtils.hasText(collection)) {
+            return defaultShard();
+        }
+
+        var name = collection.trim();
+        var key = name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_") + "_" + shortHash(name);
+        return new Shard(key, label + "_" + key, indexName + "-" + key);
+    }
+
+    /**
+     * Resolves the shard of {@code collection} if its vector index exists, listing the shards
+     * again if it is not known yet, as another instance may have created it. Returns
+     * {@code null} if the collection has no shard.
+     */
+    public Shard existingShard(String collection) {
+        var shard = route(collection);
+        if (shard.isDefault() || knownShards.containsKey(shard.collection())) {
+            return shard;
+        }
+        if (!listShards()) {
+            // Lets the search itself report why Neo4j cannot be reached
+            return shard;
+        }
+        return knownShards.get(shard.collection());
+    }
+
+    /**
+     * Resolves the shard of {@code collection}, creating its vector index on first use.
+     */
+    public Shard ensureShard(String collection) {
+        var shard = route(collection);
+        if (shard.isDefault() || knownShards.containsKey(shard.collection())) {
+            return shard;
+        }
+
+        try (var session = driver.session()) {
+            session.executeWriteWithoutResult(tx -> tx.run(CREATE_SHARD_INDEX_QUERY.formatted(shard.indexName(),
+                    shard.label(), embeddingProperty, embeddingDimension, distanceType.toLowerCase(Locale.ROOT))));
+        }
+        knownShards.put(shard.collection(), shard);
+        shardsListedAt = null;
+        LOG.info("Vector index {} ready for collection {}", shard.indexName(), shard.collection());
+
+        return shard;
+    }
+
+    /**
+     * Returns the default shard and every collection shard that has a vector index.
+     */
+    public List<Shard> allShards() {
+        var listedAt = shardsListedAt;
+        if (listedAt == null || System.nanoTime() - listedAt >= refreshInterval.toNanos()) {
+            listShards();
+        }
+
+        var shards = new ArrayList<Shard>();
+        shards.add(defaultShard());
+        shards.addAll(knownShards.values());
+        return shards;
+    }
+
+    private boolean listShards() {
+        long startedAt = System.nanoTime();
+        try (var session = driver.session()) {
+            var prefix = indexName + "-";
+            session.executeRead(tx -> tx.run(LIST_SHARD_INDEXES_QUERY, Map.of("prefix", prefix)).list())
+                    .forEach(record -> {
+                        var collection = record.get("name").asString().substring(prefix.length());
+                        knownShards.putIfAbsent(collection,
+                                new Shard(collection, record.get("label").asString(), record.get("name").asString()));
+                    });
+            shardsListedAt = startedAt;
+            return true;
+        } catch (Exception e) {
+            LOG.warn("Unable to list vector index shards, using the ones known to this instance", e);
+            return false;
+        }
+    }
+
+    private static String shortHash(String collection) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(collection.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 64-bit SimHash fingerprints over word shingles. Texts that differ only in a few
+ * words end up a few bits apart, so near-duplicates can be found by Hamming distance.
+ */
+public final class SimHash {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    public static long fingerprint(String text) {
+        var tokens = tokenize(text);
+        if (tokens.isEmpty()) {
+            return 0L;
+        }
+
+        var weights = new int[Long.SIZE];
+        int shingleCount = Math.max(1, tokens.size() - SHINGLE_SIZE + 1);
+
+        for (int i = 0; i < shingleCount; i++) {
+            var shingle = String.join(" ", tokens.subList(i, Math.min(tokens.size(), i + SHINGLE_SIZE)));
+            long hash = fnv1a64(shingle);
+
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+
+        long fingerprint = 0L;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static List<String> tokenize(String text) {
+        var tokens = new ArrayList<String>();
+        if (text == null) {
+            return tokens;
+        }
+
+        for (var token : text.toLowerCase(Locale.ROOT).split("[^\\p{Alnum}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static long fnv1a64(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.pfizer.ai.rag.retrieval;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.pfizer.ai.rag.indexing.RAGVectorShardRouter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Similarity search over the vector index shards. A search scoped to a collection queries
+ * only that collection's index, and finds nothing if the collection has no index yet; an
+ * unscoped one queries every shard in parallel with the same query embedding and merges the
+ * best {@code topK} matches by score. A shard that cannot be searched is logged and left out
+ * of the merge, but a search fails if no shard could be searched at all, rather than
+ * answering from an empty context.
+ */
+@Component
+public class RAGShardedVectorSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RAGShardedVectorSearch.class);
+
+    private static final String METADATA_PREFIX = "metadata.";
+
+    private static final String QUERY_SHARD_QUERY = """
+            CALL db.index.vector.queryNodes($indexName, $topK, $embedding)
+            YIELD node, score
+            WHERE score >= $threshold
+            RETURN node, score
+            """;
+
+    @Autowired
+    private Driver driver;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private RAGVectorShardRouter shardRouter;
+
+    @Value("${rag.vector.search.parallelism:4}")
+    private int parallelism;
+
+    private ExecutorService searchPool;
+
+    private record ScoredChunk(Document document, double score) {
+    }
+
+    @PostConstruct
+    void startSearchPool() {
+        var threadCount = new AtomicInteger();
+        searchPool = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            var thread = new Thread(runnable, "vector-shard-search-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopSearchPool() {
+        searchPool.shutdownNow();
+    }
+
+    /**
+     * Returns the {@code topK} chunks most similar to {@code query} with a score of at least
+     * {@code similarityThreshold}, best first.
+     *
+     * @param collection collection to search in, or {@code null} to search all of them
+     */
+    public List<Document> search(String query, String collection, int topK, double similarityThreshold) {
+        return searchByEmbedding(embeddingModel.embed(query), collection, topK, similarityThreshold);
+    }
+
+    /**
+     * Same as {@link #search(String, String, int, double)} for an already embedded query.
+     */
+    public List<Document> searchByEmbedding(float[] embedding, String collection, int topK,
+            double similarityThreshold) {
+        if (collection != null && !collection.isBlank()) {
+            var shard = shardRouter.existingShard(collection);
+            if (shard == null) {
+                LOG.debug("No vector index shard for collection {}", collection);
+                return List.of();
+            }
+            return toDocuments(queryShard(shard, embedding, topK, similarityThreshold));
+        }
+
+        var shards = shardRouter.allShards();
+        var matches = queryShards(shards, embedding, topK, similarityThreshold, false);
+        matches.sort(Comparator.comparingDouble(ScoredChunk::score).reversed());
+
+        LOG.debug("Searched {} vector index shards, {} matches above threshold", shards.size(), matches.size());
+
+        return toDocuments(matches.subList(0, Math.min(topK, matches.size())));
+    }
+
+    /**
+     * Queries every shard once with {@code embedding}, so their indexes are loaded, failing if
+     * any of them cannot be searched.
+     */
+    public void queryEveryShard(float[] embedding) {
+        queryShards(shardRouter.allShards(), embedding, 1, 0.0, true);
+    }
+
+    private List<ScoredChunk> queryShards(List<RAGVectorShardRouter.Shard> shards, float[] embedding, int topK,
+            double similarityThreshold, boolean failOnAnyShard) {
+        var searches = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(
+                        () -> queryShard(shard, embedding, topK, similarityThreshold), searchPool))
+                .toList();
+
+        var matches = new ArrayList<ScoredChunk>();
+        var failures = new ArrayList<Throwable>();
+        for (int i = 0; i < shards.size(); i++) {
+            try {
+                matches.addAll(searches.get(i).join());
+            } catch (CompletionException e) {
+                // A missing or failing shard must not hide the matches of the others
+                LOG.warn("Search in vector index {} failed", shards.get(i).indexName(), e.getCause());
+                failures.add(e.getCause());
+            }
+        }
+
+        if (!failures.isEmpty() && (failOnAnyShard || failures.size() == shards.size())) {
+            var failure = new IllegalStateException("Search failed in " + failures.size() + " of " + shards.size()
+                    + " vector index shards", failures.get(0));
+            failures.stream().skip(1).forEach(failure::addSuppressed);
+            throw failure;
+        }
+        return matches;
+    }
+
+    private List<ScoredChunk> queryShard(RAGVectorShardRouter.Shard shard, float[] embedding, int topK,
+            double similarityThreshold) {
+        try (var session = driver.session()) {
+            return session.executeRead(tx -> tx.run(QUERY_SHARD_QUERY, Map.of(
+                    "indexName", shard.indexName(),
+                    "topK", topK,
+                    "embedding", embedding,
+                    "threshold", similarityThreshold))
+                    .list(this::toScoredChunk));
+        }
+    }
+
+    private ScoredChunk toScoredChunk(Record record) {
+        var node = record.get("node").asNode();
+        var score = record.get("score").asDouble();
+
+        var metadata = new HashMap<String, Object>();
+        node.asMap().forEach((key, value) -> {
+            if (key.startsWith(METADATA_PREFIX)) {
+                metadata.put(key.substring(METADATA_PREFIX.length()), value);
+            }
+        });
+        metadata.put("distance", 1 - score);
+
+        var document = Document.builder()
+                .id(node.get("id").asString())
+                .text(node.get("text").asString(null))
+                .metadata(metadata)
+                .score(score)
+                .build();
+        return new ScoredChunk(document, score);
+    }
+
+    private static List<Document> toDocuments(List<ScoredChunk> matches) {
+        return matches.stream().map(ScoredChunk::document).toList();
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.pfizer.ai.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * Server-side state of one conversation: a running summary of the older turns, the most
+ * recent turns verbatim and the documents retrieved for the last question. All access goes
+ * through {@link ConversationSessionService}, which synchronizes on the session.
+ */
+public class ConversationSession {
+
+    public record Turn(String question, String answer) {
+    }
+
+    /**
+     * Documents retrieved for a query embedding within a scope (collection, topK, threshold).
+     */
+    public record Retrieval(String scope, float[] queryEmbedding, List<Document> documents) {
+    }
+
+    private final String id;
+
+    private String summary = "";
+
+    private final List<Turn> turns = new ArrayList<>();
+
+    private Retrieval lastRetrieval;
+
+    private boolean compacting;
+
+    private long lastAccessMillis = System.currentTimeMillis();
+
+    ConversationSession(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    String summary() {
+        return summary;
+    }
+
+    void summary(String summary) {
+        this.summary = summary;
+    }
+
+    List<Turn> turns() {
+        return turns;
+    }
+
+    Retrieval lastRetrieval() {
+        return lastRetrieval;
+    }
+
+    void lastRetrieval(Retrieval lastRetrieval) {
+        this.lastRetrieval = lastRetrieval;
+    }
+
+    boolean compacting() {
+        return compacting;
+    }
+
+    void compacting(boolean compacting) {
+        this.compacting = compacting;
+    }
+
+    long lastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    void touch() {
+        lastAccessMillis = System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.pfizer.ai.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import com.pfizer.ai.config.UpstreamPriority;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * In-memory conversation sessions for the ask endpoints, so clients send only the new
+ * question instead of the whole dialogue. Session ids are random UUIDs minted by
+ * {@link #create()}; a client cannot pick one, so it cannot guess its way into the
+ * conversation of someone else.
+ *
+ * The store keeps at most {@code rag.session.max-sessions} sessions, evicting the least
+ * recently used one, and drops sessions idle for longer than {@code rag.session.ttl}. Once
+ * the history of a session exceeds {@code rag.session.history-token-budget} tokens, all but
+ * the most recent turns are folded into a running summary by the LLM, in the background.
+ */
+@Service
+public class ConversationSessionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConversationSessionService.class);
+
+    private static final String KEY_SUMMARY = "summary";
+
+    private static final String KEY_CONVERSATION = "conversation";
+
+    private static final String KEY_MAX_WORDS = "maxWords";
+
+    @Autowired
+    @Qualifier("AIServiceImpl")
+    private AIService aiService;
+
+    @Value("${rag.session.max-sessions:10000}")
+    private int maxSessions;
+
+    @Value("${rag.session.ttl:30m}")
+    private Duration ttl;
+
+    @Value("${rag.session.history-token-budget:2000}")
+    private int historyTokenBudget;
+
+    @Value("${rag.session.keep-recent-turns:2}")
+    private int keepRecentTurns;
+
+    @Value("${rag.session.retrieval-reuse-similarity:0.9}")
+    private double retrievalReuseSimilarity;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final PromptTemplate summaryTemplate = new PromptTemplate(
+            new ClassPathResource("prompts/conversation-summary-template.st"));
+
+    private final LinkedHashMap<String, ConversationSession> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ConversationSession> eldest) {
+            return size() > maxSessions;
+        }
+    };
+
+    /**
+     * Idle time after which a session expires.
+     */
+    public Duration ttl() {
+        return ttl;
+    }
+
+    /**
+     * Starts a new session under a random id.
+     */
+    public ConversationSession create() {
+        var session = new ConversationSession(UUID.randomUUID().toString());
+        synchronized (sessions) {
+            removeExpired();
+            sessions.put(session.id(), session);
+        }
+        return session;
+    }
+
+    /**
+     * Returns the session with the given id, or {@code null} for a stateless request without
+     * session id.
+     *
+     * @throws UnknownSessionException if there is no such session or it has expired
+     */
+    public ConversationSession open(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return null;
+        }
+
+        synchronized (sessions) {
+            removeExpired();
+
+            var session = sessions.get(sessionId);
+            if (session == null) {
+                throw new UnknownSessionException(sessionId);
+            }
+            session.touch();
+            return session;
+        }
+    }
+
+    private void removeExpired() {
+        var expiredBefore = System.currentTimeMillis() - ttl.toMillis();
+        // Access order, so expired sessions are all at the head of the map
+        var iterator = sessions.values().iterator();
+        while (iterator.hasNext() && iterator.next().lastAccessMillis() < expiredBefore) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Appends the conversation so far, summary and recent turns, to {@code systemPrompt}.
+     */
+    public String withHistory(String systemPrompt, ConversationSession session) {
+        var base = systemPrompt != null ? systemPrompt : "";
+        if (session == null) {
+            return base;
+        }
+
+        String history;
+        synchronized (session) {
+            history = renderHistory(session.summary(), session.turns());
+        }
+        return history.isEmpty() ? base : base + "\n\nConversation so far:\n" + history;
+    }
+
+    public void recordTurn(ConversationSession session, String question, String answer) {
+        if (session == null) {
+            return;
+        }
+
+        synchronized (session) {
+            session.turns().add(new ConversationSession.Turn(question, answer));
+            session.touch();
+
+            if (session.compacting() || session.turns().size() <= keepRecentTurns || tokenCountEstimator
+                    .estimate(renderHistory(session.summary(), session.turns())) <= historyTokenBudget) {
+                return;
+            }
+            session.compacting(true);
+        }
+
+        Schedulers.boundedElastic().schedule(() -> compact(session));
+    }
+
+    /**
+     * Records the answer streamed by {@code response} as a turn of the session once the
+     * stream completes. Cancelled or failed streams leave the session unchanged.
+     */
+    public Flux<String> recording(ConversationSession session, String question, Flux<String> response) {
+        if (session == null) {
+            return response;
+        }
+
+        return Flux.defer(() -> {
+            var answer = new StringBuilder();
+            return response
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> recordTurn(session, question, answer.toString()));
+        });
+    }
+
+    /**
+     * Returns the documents retrieved for the previous question of the session if they were
+     * retrieved within the same {@code scope} for a query embedding at least
+     * {@code rag.session.retrieval-reuse-similarity} similar to this one, otherwise {@code null}.
+     */
+    public List<Document> reusableRetrieval(ConversationSession session, String scope, float[] queryEmbedding) {
+        if (session == null) {
+            return null;
+        }
+
+        synchronized (session) {
+            var previous = session.lastRetrieval();
+            if (previous == null || !previous.scope().equals(scope)
+                    || cosineSimilarity(previous.queryEmbedding(), queryEmbedding) < retrievalReuseSimilarity) {
+                return null;
+            }
+            LOG.debug("Reusing retrieval of session {} for a follow-up question", session.id());
+            return previous.documents();
+        }
+    }
+
+    public void rememberRetrieval(ConversationSession session, String scope, float[] queryEmbedding,
+            List<Document> documents) {
+        if (session == null) {
+            return;
+        }
+
+        synchronized (session) {
+            session.lastRetrieval(new ConversationSession.Retrieval(scope, queryEmbedding, List.copyOf(documents)));
+        }
+    }
+
+    private void compact(ConversationSession session) {
+        String summary;
+        List<ConversationSession.Turn> compactedTurns;
+        synchronized (session) {
+            summary = session.summary();
+            compactedTurns = new ArrayList<>(
+                    session.turns().subList(0, Math.max(0, session.turns().size() - keepRecentTurns)));
+        }
+
+        String newSummary = null;
+        try {
+            var model = new HashMap<String, Object>();
+            model.put(KEY_SUMMARY, summary);
+            model.put(KEY_CONVERSATION, renderTurns(compactedTurns));
+            model.put(KEY_MAX_WORDS, historyTokenBudget / 4);
+            // Runs after the answer was sent, so it must not compete with interactive calls
+            newSummary = UpstreamPriority.BULK.call(
+                    () -> aiService.generateBasicResponse("", summaryTemplate.render(model)));
+        } catch (Exception e) {
+            // Keep the session bounded anyway, at the cost of forgetting the oldest turns
+            LOG.warn("Unable to summarize conversation {}, dropping {} old turns", session.id(),
+                    compactedTurns.size(), e);
+        }
+
+        synchronized (session) {
+            if (newSummary != null) {
+                session.summary(newSummary.strip());
+            }
+            // New turns are only ever appended, so the compacted ones are still at the head
+            session.turns().subList(0, compactedTurns.size()).clear();
+            session.compacting(false);
+        }
+
+        LOG.debug("Compacted {} turns of conversation {} into its summary", compactedTurns.size(), session.id());
+    }
+
+    private static String renderHistory(String summary, List<ConversationSession.Turn> turns) {
+        var history = new StringBuilder();
+        if (!summary.isEmpty()) {
+            history.append("Summary of the earlier conversation: ").append(summary).append("\n\n");
+        }
+        history.append(renderTurns(turns));
+        return history.toString().strip();
+    }
+
+    private static String renderTurns(List<ConversationSession.Turn> turns) {
+        var rendered = new StringBuilder();
+        for (var turn : turns) {
+            rendered.append("User: ").append(turn.question()).append('\n')
+                    .append("Assistant: ").append(turn.answer()).append("\n\n");
+        }
+        return rendered.toString();
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0.0;
+        }
+
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0.0 || normB == 0.0 ? 0.0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.pfizer.ai.service;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -10,11 +11,11 @@ import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import com.pfizer.ai.rag.indexing.RAGTikaDocumentReader;
 import com.pfizer.ai.rag.indexing.RAGDocumentFileWriter;
+import com.pfizer.ai.rag.indexing.RAGUrlFetcher;
 
 
 
@@ -32,6 +33,9 @@ public class RAGBasicIndexingService {
     @Autowired
     private RAGDocumentFileWriter documentFileWriter;
 
+    @Autowired
+    private RAGUrlFetcher urlFetcher;
+
     private static final String CUSTOM_KEYWORDS_METADATA_KEY = "custom_keywords";
 
     private void addCustomMetadata(Document document, List<String> keywords) {
@@ -67,15 +71,27 @@ public class RAGBasicIndexingService {
         return processDocument(resource, outputFilename, appendIfFileExists, keywords);
     }
 
+    public List<Document> indexDocumentFromUpload(
+            Path spooledFile, String outputFilename, boolean appendIfFileExists, List<String> keywords) {
+        return processDocument(new FileSystemResource(spooledFile), outputFilename, appendIfFileExists, keywords);
+    }
+
     public List<Document> indexDocumentFromURL(
             String sourcePath, String outputFilename, boolean appendIfFileExists, List<String> keywords) {
+        RAGUrlFetcher.FetchResult fetched;
         try {
-            var resource = new UrlResource(sourcePath);
-
-            return processDocument(resource, outputFilename, appendIfFileExists, keywords);
+            // The output file differs per request, so always download instead of trusting validators
+            fetched = urlFetcher.fetch(sourcePath, null);
         } catch (Exception e) {
             throw new IllegalArgumentException("Invalid URL: " + sourcePath, e);
         }
+
+        try {
+            return processDocument(new FileSystemResource(fetched.file()), outputFilename, appendIfFileExists,
+                    keywords);
+        } finally {
+            urlFetcher.release(fetched);
+        }
     }
 
 }
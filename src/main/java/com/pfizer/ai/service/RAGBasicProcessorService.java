@@ -3,14 +3,19 @@ package com.pfizer.ai.service;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 
 import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
-import reactor.core.publisher.Flux;
+import com.pfizer.ai.rag.indexing.RAGChunkStore;
+
 
 @Service
 public class RAGBasicProcessorService {
@@ -25,6 +30,14 @@ public class RAGBasicProcessorService {
     @Qualifier("AIServiceImpl")
     private AIService aiService;
 
+    @Autowired
+    private ConversationSessionService conversationSessionService;
+
+    @Value("${rag.basic.context-token-budget:8000}")
+    private int contextTokenBudget;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
     public RAGBasicProcessorService() {
         var ragBasicPromptTemplate = new ClassPathResource("prompts/rag-basic-template.st");
         basicAugmentationTemplate = new PromptTemplate(ragBasicPromptTemplate);
@@ -32,12 +45,39 @@ public class RAGBasicProcessorService {
     
     private String retrieveCustomContext(String fromFilename) {
         try {
+            if (RAGChunkStore.isChunkStore(fromFilename)) {
+                try (var chunkStore = RAGChunkStore.open(Paths.get(fromFilename))) {
+                    return chunksWithinBudget(chunkStore);
+                }
+            }
+
             return new String(Files.readAllBytes(Paths.get(fromFilename)));
         } catch (Exception e) {
             return "";
         }
     }
 
+    /**
+     * Joins the chunks in file order up to the token budget, the first one always included, so
+     * only the chunks that end up in the prompt are decoded.
+     */
+    private String chunksWithinBudget(RAGChunkStore.Reader chunkStore) {
+        var context = new StringBuilder();
+        int tokens = 0;
+        for (int i = 0; i < chunkStore.size(); i++) {
+            var text = chunkStore.text(i);
+            tokens += tokenCountEstimator.estimate(text);
+            if (i > 0) {
+                if (tokens > contextTokenBudget) {
+                    break;
+                }
+                context.append("\n\n");
+            }
+            context.append(text);
+        }
+        return context.toString();
+    }
+
     private String augmentUserPrompt(String originalUserPrompt, String customContext) {
         var templateMap = new HashMap<String, Object>();
 
@@ -47,18 +87,29 @@ public class RAGBasicProcessorService {
         return basicAugmentationTemplate.render(templateMap);
     }
 
-    public String generateRAGResponse(String systemPrompt, String userPrompt, String filenameForCustomContext) {
+    public String generateRAGResponse(String systemPrompt, String userPrompt, String filenameForCustomContext,
+            String sessionId) {
+        var session = conversationSessionService.open(sessionId);
         var customContext = retrieveCustomContext(filenameForCustomContext);
         var augmentedUserPrompt = augmentUserPrompt(userPrompt, customContext);
 
-        return aiService.generateBasicResponse(systemPrompt, augmentedUserPrompt);
+        var response = aiService.generateBasicResponse(conversationSessionService.withHistory(systemPrompt, session),
+                augmentedUserPrompt);
+        conversationSessionService.recordTurn(session, userPrompt, response);
+
+        return response;
     }
 
-    public Flux<String> streamRAGResponse(String systemPrompt, String userPrompt, String filenameForCustomContext) {
+    public StreamedAnswer streamRAGResponse(String systemPrompt, String userPrompt, String filenameForCustomContext,
+            String sessionId) {
+        var session = conversationSessionService.open(sessionId);
         var customContext = retrieveCustomContext(filenameForCustomContext);
         var augmentedUserPrompt = augmentUserPrompt(userPrompt, customContext);
+        var fullSystemPrompt = conversationSessionService.withHistory(systemPrompt, session);
 
-        return aiService.streamBasicResponse(systemPrompt, augmentedUserPrompt);
+        return new StreamedAnswer(List.of(), fullSystemPrompt + "\n\n" + augmentedUserPrompt,
+                conversationSessionService.recording(session, userPrompt,
+                        aiService.streamBasicResponse(fullSystemPrompt, augmentedUserPrompt)));
     }
 
 }
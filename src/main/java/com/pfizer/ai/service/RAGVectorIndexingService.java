@@ -1,20 +1,31 @@
 package com.pfizer.ai.service;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.transformer.splitter.TextSplitter;
-import org.springframework.ai.vectorstore.neo4j.Neo4jVectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import com.pfizer.ai.config.UpstreamPriority;
+import com.pfizer.ai.rag.indexing.RAGChunkDeduplicator;
+import com.pfizer.ai.rag.indexing.RAGNeo4jChunkWriter;
 import com.pfizer.ai.rag.indexing.RAGTikaDocumentReader;
+import com.pfizer.ai.rag.indexing.RAGUrlFetcher;
+import com.pfizer.ai.rag.indexing.RAGVectorShardRouter;
 
 
 
@@ -30,10 +41,23 @@ public class RAGVectorIndexingService {
     private TextSplitter textSplitter;
 
     @Autowired
-    private Neo4jVectorStore vectorStore;
+    private RAGChunkDeduplicator chunkDeduplicator;
+
+    @Autowired
+    private RAGNeo4jChunkWriter chunkWriter;
+
+    @Autowired
+    private RAGUrlFetcher urlFetcher;
+
+    @Autowired
+    private RAGVectorShardRouter shardRouter;
 
     private static final String CUSTOM_KEYWORDS_METADATA_KEY = "custom_keywords";
 
+    private static final String UPLOAD_SOURCE_PREFIX = "upload:";
+
+    private static final String COLLECTION_METADATA_KEY = "collection";
+
     private void addCustomMetadata(Document document, List<String> keywords) {
         if (keywords == null || keywords.isEmpty()) {
             return;
@@ -44,37 +68,170 @@ public class RAGVectorIndexingService {
         document.getMetadata().putAll(Map.of(CUSTOM_KEYWORDS_METADATA_KEY, keywords));
     }
 
-    private List<Document> processDocument(Resource resource, List<String> keywords) {
+    /**
+     * Chunk ids derive from the collection, the source and the chunk position, so indexing the
+     * same source again overwrites its chunks instead of adding a second copy, and moving it to
+     * another collection leaves the old chunks to be removed as stale.
+     */
+    private List<Document> assignStableIds(List<Document> chunks, String source, String collection) {
+        var idPrefix = collection != null ? collection + ":" + source : source;
+
+        var identifiedChunks = new ArrayList<Document>(chunks.size());
+
+        for (int i = 0; i < chunks.size(); i++) {
+            var chunk = chunks.get(i);
+            var metadata = new HashMap<>(chunk.getMetadata());
+            metadata.put(RAGNeo4jChunkWriter.SOURCE_ID_METADATA_KEY, source);
+            metadata.put(RAGNeo4jChunkWriter.CHUNK_INDEX_METADATA_KEY, i);
+            if (collection != null) {
+                metadata.put(COLLECTION_METADATA_KEY, collection);
+            }
+
+            var chunkId = UUID.nameUUIDFromBytes((idPrefix + "#" + i).getBytes(StandardCharsets.UTF_8)).toString();
+            identifiedChunks.add(new Document(chunkId, chunk.getText(), metadata));
+        }
+
+        return identifiedChunks;
+    }
+
+    private VectorIndexingResult processDocument(Resource resource, String source, String collection,
+            List<String> keywords) {
         Assert.isTrue(resource != null && resource.exists(), "Resource must not be null and must exist");
 
+        var shardCollection = shardRouter.route(collection).collection();
         var parsedDocuments = tikaDocumentReader.readFrom(resource);
-        var splittedDocuments = textSplitter.split(parsedDocuments);
+        var splittedDocuments = assignStableIds(textSplitter.split(parsedDocuments), source, shardCollection);
 
         splittedDocuments.forEach(document -> addCustomMetadata(document, keywords));
 
-        vectorStore.add(splittedDocuments);
+        var deduplication = chunkDeduplicator.deduplicate(splittedDocuments, source, shardCollection);
+
+        // Indexing embeddings yield to interactive chat calls on the shared gateway quota. The
+        // writer routes the collection itself, routing the shard key again would hash it twice
+        var writeStats = UpstreamPriority.BULK.call(() -> chunkWriter.replaceSource(source, collection,
+                deduplication.uniqueChunks(), deduplication.duplicates()));
+        // Duplicates of chunks that turned out to be gone were embedded after all
+        var indexed = deduplication.promote(writeStats.promotedChunkIds());
+        chunkDeduplicator.register(source, indexed);
 
-        LOG.info("Original document splitted into {} chunks and saved to Neo4j vector store", splittedDocuments.size());
+        LOG.info("Original document splitted into {} chunks, {} embedded and saved to Neo4j vector store, "
+                + "{} near-duplicates linked (dedup ratio {})", splittedDocuments.size(),
+                indexed.uniqueChunks().size(), indexed.duplicates().size(),
+                String.format("%.2f", indexed.dedupRatio()));
 
-        return splittedDocuments;
+        return new VectorIndexingResult(splittedDocuments, indexed.duplicates().size(),
+                indexed.dedupRatio(), false);
     }
 
-    public List<Document> indexDocumentFromFilesystem(
-            String sourcePath, List<String> keywords) {
+    public VectorIndexingResult indexDocumentFromFilesystem(
+            String sourcePath, String collection, List<String> keywords) {
         var resource = new FileSystemResource(sourcePath);
 
-        return processDocument(resource, keywords);
+        return processDocument(resource, normalizeFilesystemSource(sourcePath), collection, keywords);
     }
 
-    public List<Document> indexDocumentFromURL(
-            String sourcePath, List<String> keywords) {
+    public VectorIndexingResult indexDocumentFromURL(
+            String sourcePath, String collection, List<String> keywords) {
+        RAGUrlFetcher.FetchResult fetched;
         try {
-            var resource = new UrlResource(sourcePath);
-
-            return processDocument(resource, keywords);
+            fetched = urlFetcher.fetch(sourcePath, indexedAs(collection, keywords));
         } catch (Exception e) {
             throw new IllegalArgumentException("Invalid URL: " + sourcePath, e);
         }
+
+        return processFetchedDocument(fetched, collection, keywords);
+    }
+
+    public List<VectorIndexingResult> indexDocumentsFromURLs(
+            List<String> sourcePaths, String collection, List<String> keywords) {
+        var fetchedDocuments = urlFetcher.fetchAll(sourcePaths, indexedAs(collection, keywords));
+
+        try {
+            var results = new ArrayList<VectorIndexingResult>(fetchedDocuments.size());
+            for (var fetched : fetchedDocuments) {
+                results.add(processFetchedDocument(fetched, collection, keywords));
+            }
+            return results;
+        } finally {
+            fetchedDocuments.forEach(urlFetcher::release);
+        }
+    }
+
+    /**
+     * Indexes a document streamed in by a client under the source returned by
+     * {@link #uploadSource(String, String, String)}.
+     */
+    public VectorIndexingResult indexDocumentFromUpload(
+            Path spooledFile, String source, String collection, List<String> keywords) {
+        Assert.isTrue(source.startsWith(UPLOAD_SOURCE_PREFIX), "Not an upload source: " + source);
+
+        return processDocument(new FileSystemResource(spooledFile), source, collection, keywords);
+    }
+
+    /**
+     * Source an upload is indexed under. Filenames are not unique, so an upload is keyed by the
+     * source id the client gives it, which lets a new version replace the previous one, or else
+     * by the hash of its content. The key is scoped to the collection, so the same document
+     * uploaded to two collections is indexed twice instead of one replacing the other.
+     */
+    public String uploadSource(String collection, String sourceId, String contentSha256) {
+        var shardCollection = Objects.toString(shardRouter.route(collection).collection(), "");
+        var key = StringUtils.hasText(sourceId) ? sourceId.trim() : "sha256:" + contentSha256;
+
+        return UPLOAD_SOURCE_PREFIX + shardCollection + "/" + key;
+    }
+
+    private VectorIndexingResult processFetchedDocument(RAGUrlFetcher.FetchResult fetched, String collection,
+            List<String> keywords) {
+        if (fetched.unchanged()) {
+            return VectorIndexingResult.unchangedSource();
+        }
+
+        try {
+            var result = processDocument(new FileSystemResource(fetched.file()), fetched.url(), collection,
+                    keywords);
+            urlFetcher.commit(fetched);
+            return result;
+        } finally {
+            urlFetcher.release(fetched);
+        }
+    }
+
+    /**
+     * Removes every chunk indexed from the given sources (filesystem paths or URLs).
+     *
+     * @return number of embedded chunks deleted
+     */
+    public int deleteDocuments(List<String> sources) {
+        Assert.notEmpty(sources, "Sources must not be empty");
+
+        var normalizedSources = sources.stream()
+                .map(source -> source.matches("^(?i)(http|https)://.*$") || source.startsWith(UPLOAD_SOURCE_PREFIX)
+                        ? source
+                        : normalizeFilesystemSource(source))
+                .distinct()
+                .toList();
+
+        var deletedChunks = chunkWriter.deleteSources(normalizedSources);
+        chunkDeduplicator.forget(normalizedSources);
+        urlFetcher.forget(normalizedSources);
+
+        LOG.info("Deleted {} chunks of {} sources from Neo4j vector store", deletedChunks, normalizedSources.size());
+
+        return deletedChunks;
+    }
+
+    /**
+     * Describes how a URL is indexed, so that an unchanged URL is only skipped if it was last
+     * indexed into the same collection with the same keywords.
+     */
+    private String indexedAs(String collection, List<String> keywords) {
+        return "collection=" + Objects.toString(shardRouter.route(collection).collection(), "")
+                + ";keywords=" + (keywords != null ? keywords : List.of());
+    }
+
+    private String normalizeFilesystemSource(String sourcePath) {
+        return Paths.get(sourcePath).toAbsolutePath().normalize().toString();
     }
 
 }
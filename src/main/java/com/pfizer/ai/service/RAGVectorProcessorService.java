@@ -9,14 +9,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.neo4j.Neo4jVectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
-import reactor.core.publisher.Flux;
+import com.pfizer.ai.rag.retrieval.RAGShardedVectorSearch;
+
 
 @Service
 public class RAGVectorProcessorService {
@@ -27,44 +30,81 @@ public class RAGVectorProcessorService {
 
     private static final String KEY_QUESTION = "question";
 
-    private static final int TOP_K = 4;
-
-    private static final double SIMILARITY_THRESHOLD = 0.7;
-
     private PromptTemplate basicAugmentationTemplate;
 
     @Autowired
     private Neo4jVectorStore vectorStore;
 
+    @Autowired
+    private RAGShardedVectorSearch shardedVectorSearch;
+
     @Autowired
     @Qualifier("AIServiceImpl")
     private AIService aiService;
 
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private ConversationSessionService conversationSessionService;
+
+    // Defaults for requests without topK, compare settings with RetrievalEvaluationTests
+    @Value("${rag.vector.search.top-k:4}")
+    private int defaultTopK;
+
+    // Neo4j cosine score, (1 + cosine similarity) / 2
+    @Value("${rag.vector.search.similarity-threshold:0.7}")
+    private double similarityThreshold;
+
     public RAGVectorProcessorService() {
         var ragBasicPromptTemplate = new ClassPathResource("prompts/rag-basic-template.st");
         this.basicAugmentationTemplate = new PromptTemplate(ragBasicPromptTemplate);
     }
     
-    private String retrieveCustomContext(String userPrompt, int topK) {
+    /**
+     * Searches the vector store, or reuses the documents retrieved for the previous question
+     * of the session when the new one is about the same thing.
+     */
+    private List<Document> retrieveDocuments(String query, String collection, int topK, double similarityThreshold,
+            ConversationSession session) {
+        if (session == null) {
+            return shardedVectorSearch.search(query, collection, topK, similarityThreshold);
+        }
+
+        var scope = collection + "|" + topK + "|" + similarityThreshold;
+        var queryEmbedding = embeddingModel.embed(query);
+        var reusableDocuments = conversationSessionService.reusableRetrieval(session, scope, queryEmbedding);
+        if (reusableDocuments != null) {
+            return reusableDocuments;
+        }
+
+        var documents = shardedVectorSearch.searchByEmbedding(queryEmbedding, collection, topK, similarityThreshold);
+        conversationSessionService.rememberRetrieval(session, scope, queryEmbedding, documents);
+        return documents;
+    }
+
+    private List<Document> retrieveSimilarDocuments(String userPrompt, String collection, int topK,
+            ConversationSession session) {
         try {
-            var similarDocuments = vectorStore.similaritySearch(
-                SearchRequest.builder()
-                    .query(userPrompt)
-                    .topK(topK > 0 ? topK : TOP_K)
-                    .similarityThreshold(SIMILARITY_THRESHOLD)
-                    .build()
-            );
-            var customContext = new StringBuilder();
-            if (similarDocuments != null) {
-                similarDocuments.forEach(document -> customContext.append(document.getMetadata().get("custom_keywords")).append(" "));
-            }
-            return customContext.toString();
+            var similarDocuments = retrieveDocuments(userPrompt, collection,
+                    effectiveTopK(topK), similarityThreshold, session);
+            return similarDocuments != null ? similarDocuments : List.of();
         } catch (Exception e) {
             LOG.error(userPrompt, e);
-            return "";
+            return List.of();
         }
     }
 
+    private int effectiveTopK(int topK) {
+        return topK > 0 ? topK : defaultTopK;
+    }
+
+    private String customContextOf(List<Document> similarDocuments) {
+        var customContext = new StringBuilder();
+        similarDocuments.forEach(document -> customContext.append(document.getMetadata().get("custom_keywords")).append(" "));
+        return customContext.toString();
+    }
+
     private String augmentUserPrompt(String originalUserPrompt, String customContext) {
         var templateMap = new HashMap<String, Object>();
 
@@ -74,13 +114,15 @@ public class RAGVectorProcessorService {
         return basicAugmentationTemplate.render(templateMap);
     }
 
-    public String generateRAGResponse(String systemPrompt, String userPrompt, int topK) {
+    public String generateRAGResponse(String systemPrompt, String userPrompt, String collection, int topK,
+            String sessionId) {
+        // Outside the try, an unknown session must reach the client instead of an "I don't know."
+        var session = conversationSessionService.open(sessionId);
+
         try {
-            // Default to 5 if topK is 0 or negative
-            int effectiveTopK = (topK <= 0) ? 5 : topK;
-            
             // Get relevant documents using vector similarity search
-            List<Document> relevantDocuments = vectorStore.similaritySearch(userPrompt);
+            List<Document> relevantDocuments = retrieveDocuments(userPrompt, collection,
+                    effectiveTopK(topK), similarityThreshold, session);
             
             // If no documents found, return default response
             if (relevantDocuments.isEmpty()) {
@@ -95,22 +137,31 @@ public class RAGVectorProcessorService {
             }
             String context = contextBuilder.toString();
             
-            // Build prompt with context
-            String fullSystemPrompt = systemPrompt + "\n\nContext information:\n" + context;
+            // Build prompt with context and the conversation so far
+            String fullSystemPrompt = conversationSessionService.withHistory(
+                    systemPrompt + "\n\nContext information:\n" + context, session);
             
             // Generate response using OpenAI
-            return aiService.generateBasicResponse(fullSystemPrompt, userPrompt);
+            var response = aiService.generateBasicResponse(fullSystemPrompt, userPrompt);
+            conversationSessionService.recordTurn(session, userPrompt, response);
+
+            return response;
         } catch (Exception e) {
             LOG.error("Error generating RAG response", e);
             return "I don't know.";
         }
     }
 
-    public Flux<String> streamRAGResponse(String systemPrompt, String userPrompt, int topK) {
-        var customContext = retrieveCustomContext(userPrompt, topK);
-        var augmentedUserPrompt = augmentUserPrompt(userPrompt, customContext);
+    public StreamedAnswer streamRAGResponse(String systemPrompt, String userPrompt, String collection, int topK,
+            String sessionId) {
+        var session = conversationSessionService.open(sessionId);
+        var similarDocuments = retrieveSimilarDocuments(userPrompt, collection, topK, session);
+        var augmentedUserPrompt = augmentUserPrompt(userPrompt, customContextOf(similarDocuments));
+        var fullSystemPrompt = conversationSessionService.withHistory(systemPrompt, session);
 
-        return aiService.streamBasicResponse(systemPrompt, augmentedUserPrompt);
+        return new StreamedAnswer(similarDocuments, fullSystemPrompt + "\n\n" + augmentedUserPrompt,
+                conversationSessionService.recording(session, userPrompt,
+                        aiService.streamBasicResponse(fullSystemPrompt, augmentedUserPrompt)));
     }
 
     public boolean testNeo4jConnection() {
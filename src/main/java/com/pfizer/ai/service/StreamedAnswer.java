@@ -0,0 +1,15 @@
+package com.pfizer.ai.service;
+
+import java.util.List;
+
+import org.springframework.ai.document.Document;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * An answer being streamed by the LLM, with the documents it was grounded on and the full
+ * prompt it was given.
+ */
+public record StreamedAnswer(List<Document> sources, String prompt, Flux<String> content) {
+
+}
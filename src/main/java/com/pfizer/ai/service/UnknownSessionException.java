@@ -0,0 +1,20 @@
+package com.pfizer.ai.service;
+
+/**
+ * Thrown for a session id that was never minted or whose session has expired, so the client
+ * has to start a new session instead of retrying with the same id.
+ */
+public class UnknownSessionException extends IllegalArgumentException {
+
+    private final String sessionId;
+
+    public UnknownSessionException(String sessionId) {
+        super("Unknown or expired session " + sessionId);
+        this.sessionId = sessionId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.pfizer.ai.service;
+
+import java.util.List;
+
+import org.springframework.ai.document.Document;
+
+public record VectorIndexingResult(
+        List<Document> chunks,
+        int duplicateChunks,
+        double dedupRatio,
+        boolean unchanged) {
+
+    public static VectorIndexingResult unchangedSource() {
+        return new VectorIndexingResult(List.of(), 0, 0.0, true);
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.pfizer.ai.api.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import com.pfizer.ai.api.response.BasicIndexingResponse;
+import com.pfizer.ai.rag.indexing.RAGUploadSpooler;
+import com.pfizer.ai.service.RAGBasicIndexingService;
+
+public class AIBasicRAGApiTests {
+
+    private static final String PROTOCOL = "Protocol A. Inclusion criteria. Participants aged 18 or older.";
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> indexed = new ArrayList<>();
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        // Everything but the indexing itself, which needs the document reader and splitter
+        var indexingService = spy(new RAGBasicIndexingService());
+        doAnswer(invocation -> {
+            Path spooledFile = invocation.getArgument(0);
+            indexed.add(invocation.getArgument(1) + " " + invocation.getArgument(2) + " "
+                    + Files.readString(spooledFile));
+            return List.of(new Document(PROTOCOL));
+        }).when(indexingService).indexDocumentFromUpload(any(), any(), anyBoolean(), any());
+
+        var uploadSpooler = new RAGUploadSpooler();
+        ReflectionTestUtils.setField(uploadSpooler, "spoolDir", tempDir.toString());
+        ReflectionTestUtils.setField(uploadSpooler, "maxSize", DataSize.ofKilobytes(1));
+
+        var api = new AIBasicRAGApi();
+        ReflectionTestUtils.setField(api, "ragIndexingService", indexingService);
+        ReflectionTestUtils.setField(api, "uploadSpooler", uploadSpooler);
+
+        client = WebTestClient.bindToController(api).build();
+    }
+
+    @Test
+    void indexesTheSpooledUploadAndReleasesIt() throws IOException {
+        var response = upload(PROTOCOL, "?output-filename=study.chunks&append=true")
+                .expectStatus().isOk()
+                .expectBody(BasicIndexingResponse.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertTrue(response.success());
+        assertEquals("Document successfully indexed as 1 chunks", response.message());
+        assertEquals(List.of("study.chunks true " + PROTOCOL), indexed);
+        assertSpoolIsEmpty();
+    }
+
+    @Test
+    void rejectsUploadsOverTheLimit() throws IOException {
+        upload("x".repeat(2048), "?output-filename=study.chunks")
+                .expectStatus().is5xxServerError();
+
+        assertTrue(indexed.isEmpty());
+        assertSpoolIsEmpty();
+    }
+
+    private WebTestClient.ResponseSpec upload(String content, String query) {
+        var body = new MultipartBodyBuilder();
+        body.part("file", content.getBytes(StandardCharsets.UTF_8))
+                .filename("protocol.pdf")
+                .contentType(MediaType.APPLICATION_PDF);
+
+        return client.post()
+                .uri("/api/ai/rag/basic/indexing/document/upload" + query)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange();
+    }
+
+    private void assertSpoolIsEmpty() throws IOException {
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+}
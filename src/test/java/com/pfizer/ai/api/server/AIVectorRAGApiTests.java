@@ -0,0 +1,162 @@
+package com.pfizer.ai.api.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import com.pfizer.ai.api.request.AIPromptRequest;
+import com.pfizer.ai.api.response.BasicIndexingResponse;
+import com.pfizer.ai.rag.indexing.RAGUploadSpooler;
+import com.pfizer.ai.rag.indexing.RAGVectorShardRouter;
+import com.pfizer.ai.service.ConversationSessionService;
+import com.pfizer.ai.service.RAGBasicProcessorService;
+import com.pfizer.ai.service.RAGVectorIndexingService;
+import com.pfizer.ai.service.RAGVectorProcessorService;
+import com.pfizer.ai.service.VectorIndexingResult;
+
+public class AIVectorRAGApiTests {
+
+    private static final String PROTOCOL = "Protocol A. Inclusion criteria. Participants aged 18 or older.";
+
+    private static final String AMENDMENT = "Protocol A, amendment 2. Participants aged 21 or older.";
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> indexedSources = new ArrayList<>();
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        var shardRouter = new RAGVectorShardRouter();
+        ReflectionTestUtils.setField(shardRouter, "label", "Document");
+        ReflectionTestUtils.setField(shardRouter, "indexName", "spring-ai-document-index");
+
+        // Everything but the indexing itself, which needs Neo4j and the embedding model
+        var indexingService = spy(new RAGVectorIndexingService());
+        ReflectionTestUtils.setField(indexingService, "shardRouter", shardRouter);
+        doAnswer(invocation -> {
+            Path spooledFile = invocation.getArgument(0);
+            assertTrue(Files.exists(spooledFile));
+            indexedSources.add(invocation.getArgument(1));
+            return new VectorIndexingResult(List.of(), 0, 0.0, false);
+        }).when(indexingService).indexDocumentFromUpload(any(), any(), any(), any());
+
+        var uploadSpooler = new RAGUploadSpooler();
+        ReflectionTestUtils.setField(uploadSpooler, "spoolDir", tempDir.toString());
+        ReflectionTestUtils.setField(uploadSpooler, "maxSize", DataSize.ofMegabytes(1));
+
+        var sessionService = new ConversationSessionService();
+        ReflectionTestUtils.setField(sessionService, "ttl", Duration.ofMinutes(30));
+        var processorService = new RAGBasicProcessorService();
+        ReflectionTestUtils.setField(processorService, "conversationSessionService", sessionService);
+        var vectorProcessorService = new RAGVectorProcessorService();
+        ReflectionTestUtils.setField(vectorProcessorService, "conversationSessionService", sessionService);
+
+        var api = new AIVectorRAGApi();
+        ReflectionTestUtils.setField(api, "ragIndexingService", indexingService);
+        ReflectionTestUtils.setField(api, "ragProcessorService", processorService);
+        ReflectionTestUtils.setField(api, "ragVectorProcessorService", vectorProcessorService);
+        ReflectionTestUtils.setField(api, "uploadSpooler", uploadSpooler);
+
+        client = WebTestClient.bindToController(api)
+                .controllerAdvice(new ConversationSessionExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void uploadsWithTheSameFilenameDoNotReplaceEachOther() throws IOException {
+        upload(PROTOCOL, "protocol.pdf", "");
+        upload(AMENDMENT, "protocol.pdf", "");
+
+        assertNotEquals(indexedSources.get(0), indexedSources.get(1));
+        assertSpoolIsEmpty();
+    }
+
+    @Test
+    void sameDocumentInTwoCollectionsIsIndexedUnderTwoSources() {
+        upload(PROTOCOL, "protocol.pdf", "?collection=NCT01");
+        upload(PROTOCOL, "protocol-copy.pdf", "?collection=NCT01");
+        upload(PROTOCOL, "protocol.pdf", "?collection=NCT02");
+
+        assertEquals(indexedSources.get(0), indexedSources.get(1));
+        assertTrue(indexedSources.get(0).startsWith("upload:nct01_714e99d6/sha256:"));
+        assertTrue(indexedSources.get(2).startsWith("upload:nct02_89b99c80/sha256:"));
+    }
+
+    @Test
+    void sourceIdGivenByTheClientKeysNewVersions() {
+        var message = upload(PROTOCOL, "protocol.pdf", "?collection=NCT01&source-id=protocol-a");
+        upload(AMENDMENT, "amendment.pdf", "?collection=NCT01&source-id=protocol-a");
+        upload(AMENDMENT, "amendment.pdf", "?source-id=protocol-a");
+
+        assertEquals(List.of("upload:nct01_714e99d6/protocol-a", "upload:nct01_714e99d6/protocol-a",
+                "upload:/protocol-a"), indexedSources);
+        assertTrue(message.endsWith("from source upload:nct01_714e99d6/protocol-a"), message);
+    }
+
+    @Test
+    void everyAskEndpointAnswersAnUnknownSessionWithGone() {
+        var request = new AIPromptRequest(null, "What is the dose?", "0b7a5f6e-9d3c-4c1e-8f7a-2d4b6c8e0a1f");
+
+        for (var path : List.of("/ask?filename=protocol.pdf", "/ask/stream?filename=protocol.pdf", "/ask-vector",
+                "/ask/stream-vector")) {
+            client.post()
+                    .uri("/api/ai/rag/vector" + path)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.GONE)
+                    .expectBody()
+                    .jsonPath("$.title").isEqualTo("Unknown session");
+        }
+    }
+
+    private String upload(String content, String filename, String query) {
+        var body = new MultipartBodyBuilder();
+        body.part("file", content.getBytes(StandardCharsets.UTF_8))
+                .filename(filename)
+                .contentType(MediaType.APPLICATION_PDF);
+
+        return client.post()
+                .uri("/api/ai/rag/vector/indexing/document/upload" + query)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BasicIndexingResponse.class)
+                .returnResult()
+                .getResponseBody()
+                .message();
+    }
+
+    private void assertSpoolIsEmpty() throws IOException {
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.pfizer.ai.api.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.pfizer.ai.api.response.StreamFrame;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+public class StreamFrameCoalescerTests {
+
+    private StreamFrameCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new StreamFrameCoalescer();
+        ReflectionTestUtils.setField(coalescer, "flushInterval", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(coalescer, "maxFragmentsPerFrame", 2);
+        ReflectionTestUtils.setField(coalescer, "maxFrameChars", 16);
+    }
+
+    @Test
+    void coalescesFragmentsIntoDeltaFrames() {
+        var frames = coalescer.frames(Flux.just("200 ", "mg ", "once ", "daily"), "What is the dose?")
+                .collectList().block();
+
+        assertEquals(List.of(StreamFrame.TYPE_DELTA, StreamFrame.TYPE_DELTA, StreamFrame.TYPE_USAGE,
+                StreamFrame.TYPE_DONE), frames.stream().map(StreamFrame::type).toList());
+        assertEquals("200 mg ", frames.get(0).delta());
+        assertEquals("once daily", frames.get(1).delta());
+    }
+
+    @Test
+    void splitsDeltasLongerThanTheFrameSize() {
+        var answer = "Take 20 mg once💊 daily with food";
+        var frames = coalescer.frames(Flux.just(answer), "What is the dose?").collectList().block();
+
+        var deltas = frames.stream().filter(frame -> StreamFrame.TYPE_DELTA.equals(frame.type()))
+                .map(StreamFrame::delta).toList();
+        // The pill emoji is a surrogate pair, it moves to the next frame whole
+        assertEquals(List.of("Take 20 mg once", "💊 daily with fo", "od"), deltas);
+        assertEquals(answer, String.join("", deltas));
+    }
+
+    @Test
+    void waitsForDemandInsteadOfOverflowing() {
+        StepVerifier.create(coalescer.frames(Flux.range(0, 100).map(i -> "t" + i), "prompt"), 1)
+                .expectNextMatches(frame -> frame.delta().equals("t0t1"))
+                .thenRequest(1)
+                .expectNextMatches(frame -> frame.delta().equals("t2t3"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void errorFrameDoesNotExposeTheCause() {
+        var fragments = Flux.just("200 mg")
+                .concatWith(Flux.error(new IllegalStateException("Neo.ClientError at bolt://10.0.3.7:7687")));
+
+        var frames = coalescer.frames(fragments, "What is the dose?").collectList().block();
+
+        var error = frames.get(frames.size() - 1);
+        assertEquals(StreamFrame.TYPE_ERROR, error.type());
+        assertEquals(StreamFrameCoalescer.STREAM_FAILED_MESSAGE, error.error());
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.pfizer.ai.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiEmbeddingProperties;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class OpenAICustomConfigurationTests {
+
+    private static final String CHAT_RESPONSE = """
+            {"id": "chatcmpl-1", "object": "chat.completion", "created": 1, "model": "gpt-4o-mini",
+             "choices": [{"index": 0, "message": {"role": "assistant", "content": "pong"}, "finish_reason": "stop"}],
+             "usage": {"prompt_tokens": 1, "completion_tokens": 1, "total_tokens": 2}}
+            """;
+
+    private static final String EMBEDDING_RESPONSE = """
+            {"object": "list", "model": "text-embedding-3-small",
+             "data": [{"object": "embedding", "index": 0, "embedding": [0.1, 0.2, 0.3]}],
+             "usage": {"prompt_tokens": 1, "total_tokens": 1}}
+            """;
+
+    private HttpServer server;
+
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    private UpstreamRequestScheduler scheduler;
+
+    private OpenAICustomConfiguration configuration;
+
+    private PingFederateTokenProvider tokenProvider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> respond(exchange, """
+                {"access_token": "gateway-token", "expires_in": 3600}
+                """));
+        server.createContext("/v1/chat/completions", exchange -> {
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            respond(exchange, CHAT_RESPONSE);
+        });
+        server.createContext("/v1/embeddings", exchange -> {
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            respond(exchange, EMBEDDING_RESPONSE);
+        });
+        server.start();
+        var baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        configuration = new OpenAICustomConfiguration();
+        ReflectionTestUtils.setField(configuration, "apiBaseUrl", baseUrl);
+        ReflectionTestUtils.setField(configuration, "streamRequestTokens", 2000L);
+
+        scheduler = new UpstreamRequestScheduler(6000, 1_000_000, 2, 4, 0.5, Duration.ofSeconds(10),
+                Duration.ofSeconds(5));
+        tokenProvider = new PingFederateTokenProvider(new RestTemplate(), "client", "secret", baseUrl + "/token");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void chatCallsGoThroughTheSchedulerWithTheGatewayToken() {
+        var openAiApi = configuration.customOpenAiApi(tokenProvider, scheduler);
+        var chatModel = configuration.openAiChatModel(openAiApi, new OpenAiChatProperties(), retryTemplate());
+
+        assertEquals("pong", chatModel.call("ping"));
+
+        assertEquals(1L, granted("interactive"));
+        assertEquals(List.of("Bearer gateway-token"), authorizations);
+    }
+
+    @Test
+    void embeddingCallsKeepTheirPriority() {
+        var openAiApi = configuration.customOpenAiApi(tokenProvider, scheduler);
+        var embeddingModel = configuration.openAiEmbeddingModel(openAiApi, new OpenAiEmbeddingProperties(),
+                retryTemplate());
+
+        var embedding = UpstreamPriority.BULK.call(() -> embeddingModel.embed("criteria"));
+
+        assertEquals(3, embedding.length);
+        assertEquals(1L, granted("bulk"));
+        assertEquals(0L, granted("interactive"));
+    }
+
+    private long granted(String priority) {
+        @SuppressWarnings("unchecked")
+        var stats = (Map<String, Object>) scheduler.metrics().get(priority);
+        return (long) stats.get("granted");
+    }
+
+    private static RetryTemplate retryTemplate() {
+        return RetryTemplate.builder().maxAttempts(1).build();
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        var body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+}
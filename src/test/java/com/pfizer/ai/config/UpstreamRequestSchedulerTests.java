@@ -0,0 +1,133 @@
+package com.pfizer.ai.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class UpstreamRequestSchedulerTests {
+
+    private static final Duration FAST = Duration.ofMillis(50);
+
+    @Test
+    void bulkCallsNeverTakeTheLastSlot() throws Exception {
+        var scheduler = scheduler(2, 2, Duration.ofMillis(200));
+
+        var bulk = scheduler.acquire(UpstreamPriority.BULK, 10);
+        assertThrows(IllegalStateException.class, () -> scheduler.acquire(UpstreamPriority.BULK, 10));
+
+        var interactive = scheduler.acquire(UpstreamPriority.INTERACTIVE, 10);
+        scheduler.release(bulk, 200, FAST, null);
+        scheduler.release(interactive, 200, FAST, null);
+        assertEquals(1L, waitStats(scheduler, "bulk").get("granted"));
+        assertEquals(1L, waitStats(scheduler, "interactive").get("granted"));
+    }
+
+    @Test
+    void limitNeverDropsBelowTwo() throws Exception {
+        var scheduler = new UpstreamRequestScheduler(6000, 1_000_000, 1, 1, 0.5, Duration.ofSeconds(10),
+                Duration.ofMillis(200));
+
+        assertEquals(2.0, scheduler.metrics().get("concurrencyLimit"));
+        scheduler.release(scheduler.acquire(UpstreamPriority.BULK, 10), 200, FAST, null);
+    }
+
+    @Test
+    void throttlingHalvesTheLimitAndPausesForRetryAfter() throws Exception {
+        var scheduler = scheduler(2, 8, Duration.ofSeconds(5));
+
+        scheduler.release(scheduler.acquire(UpstreamPriority.INTERACTIVE, 10), 429, FAST, Duration.ofMillis(300));
+        assertEquals(4.0, scheduler.metrics().get("concurrencyLimit"));
+        assertEquals(1L, scheduler.metrics().get("throttledResponses"));
+
+        long startedAt = System.nanoTime();
+        scheduler.release(scheduler.acquire(UpstreamPriority.INTERACTIVE, 10), 200, FAST, null);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) >= 250);
+    }
+
+    @Test
+    void slowResponsesHalveTheLimitAndFastOnesGrowItAdditively() throws Exception {
+        var scheduler = scheduler(2, 8, Duration.ofSeconds(5));
+
+        scheduler.release(scheduler.acquire(UpstreamPriority.INTERACTIVE, 10), 200, Duration.ofSeconds(11), null);
+        assertEquals(4.0, scheduler.metrics().get("concurrencyLimit"));
+
+        // 4 -> 4.25 -> 4.49 -> 4.71 -> 4.92 -> 5.12
+        for (int i = 0; i < 5; i++) {
+            scheduler.release(scheduler.acquire(UpstreamPriority.INTERACTIVE, 10), 200, FAST, null);
+        }
+        assertEquals(5.0, scheduler.metrics().get("concurrencyLimit"));
+    }
+
+    @Test
+    void waitingInteractiveCallsGoBeforeBulkCalls() throws Exception {
+        var scheduler = scheduler(2, 2, Duration.ofSeconds(5));
+        var first = scheduler.acquire(UpstreamPriority.INTERACTIVE, 10);
+        var second = scheduler.acquire(UpstreamPriority.INTERACTIVE, 10);
+
+        var order = new CopyOnWriteArrayList<UpstreamPriority>();
+        var done = new CountDownLatch(2);
+        waiter(scheduler, UpstreamPriority.BULK, order, done);
+        awaitQueued(scheduler, "bulk");
+        waiter(scheduler, UpstreamPriority.INTERACTIVE, order, done);
+        awaitQueued(scheduler, "interactive");
+
+        scheduler.release(first, 200, FAST, null);
+        scheduler.release(second, 200, FAST, null);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(UpstreamPriority.INTERACTIVE, UpstreamPriority.BULK), order);
+    }
+
+    @Test
+    void requestBucketBoundsTheRate() throws Exception {
+        var scheduler = new UpstreamRequestScheduler(1, 1_000_000, 2, 8, 0.5, Duration.ofSeconds(10),
+                Duration.ofMillis(200));
+
+        scheduler.release(scheduler.acquire(UpstreamPriority.INTERACTIVE, 10), 200, FAST, null);
+        assertThrows(IllegalStateException.class, () -> scheduler.acquire(UpstreamPriority.INTERACTIVE, 10));
+        assertEquals(1L, scheduler.metrics().get("acquireTimeouts"));
+    }
+
+    private static UpstreamRequestScheduler scheduler(int minConcurrency, int maxConcurrency, Duration acquireTimeout) {
+        return new UpstreamRequestScheduler(6000, 1_000_000, minConcurrency, maxConcurrency, 0.5,
+                Duration.ofSeconds(10), acquireTimeout);
+    }
+
+    private static void waiter(UpstreamRequestScheduler scheduler, UpstreamPriority priority,
+            List<UpstreamPriority> order, CountDownLatch done) {
+        var thread = new Thread(() -> {
+            try {
+                var permit = scheduler.acquire(priority, 10);
+                order.add(priority);
+                scheduler.release(permit, 200, FAST, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void awaitQueued(UpstreamRequestScheduler scheduler, String priority) throws InterruptedException {
+        for (int i = 0; i < 500 && (int) waitStats(scheduler, priority).get("queueDepth") == 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> waitStats(UpstreamRequestScheduler scheduler, String priority) {
+        return (Map<String, Object>) scheduler.metrics().get(priority);
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.pfizer.ai.rag.evaluation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays embeddings of the production model from a JSON file keyed by the SHA-256 of the
+ * text, so the retrieval evaluation scores on the production model's scale without calling
+ * the gateway on every run.
+ *
+ * With a delegate, texts missing from the file are embedded by it and {@link #save()} writes
+ * them back. Without one, a missing text fails the run, as the file no longer matches the
+ * golden set documents or the splitter settings.
+ */
+class CachedEmbeddingModel implements EmbeddingModel {
+
+    record EmbeddingCache(String model, Map<String, float[]> embeddings) {
+    }
+
+    private final Path file;
+
+    private final String model;
+
+    private final EmbeddingModel delegate;
+
+    private final Map<String, float[]> embeddings;
+
+    private boolean changed;
+
+    CachedEmbeddingModel(Path file, String model, EmbeddingModel delegate) {
+        this.file = file;
+        this.model = model;
+        this.delegate = delegate;
+        this.embeddings = new TreeMap<>(read(file, model));
+    }
+
+    @Override
+    public synchronized EmbeddingResponse call(EmbeddingRequest request) {
+        var texts = request.getInstructions();
+
+        var missing = texts.stream().filter(text -> !embeddings.containsKey(key(text))).distinct().toList();
+        if (!missing.isEmpty()) {
+            if (delegate == null) {
+                throw new IllegalStateException(missing.size() + " texts have no cached embedding in " + file
+                        + ", record them again with the gateway credentials set");
+            }
+            var vectors = delegate.embed(missing);
+            for (int i = 0; i < missing.size(); i++) {
+                embeddings.put(key(missing.get(i)), vectors.get(i));
+            }
+            changed = true;
+        }
+
+        var result = new ArrayList<Embedding>();
+        for (int i = 0; i < texts.size(); i++) {
+            result.add(new Embedding(embeddings.get(key(texts.get(i))), i));
+        }
+        return new EmbeddingResponse(result);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public synchronized int dimensions() {
+        return embeddings.isEmpty() ? delegate.dimensions() : embeddings.values().iterator().next().length;
+    }
+
+    synchronized void save() throws IOException {
+        if (changed) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            new ObjectMapper().writeValue(file.toFile(), new EmbeddingCache(model, embeddings));
+            changed = false;
+        }
+    }
+
+    private static Map<String, float[]> read(Path file, String model) {
+        if (!Files.exists(file)) {
+            return Map.of();
+        }
+        try {
+            var cache = new ObjectMapper().readValue(file.toFile(), EmbeddingCache.class);
+            if (!model.equals(cache.model())) {
+                throw new IllegalStateException("Embeddings in " + file + " come from " + cache.model()
+                        + ", not from " + model);
+            }
+            return cache.embeddings();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the cached embeddings in " + file, e);
+        }
+    }
+
+    private static String key(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
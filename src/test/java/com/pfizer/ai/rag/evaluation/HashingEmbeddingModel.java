@@ -0,0 +1,89 @@
+package com.pfizer.ai.rag.evaluation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * Deterministic, offline embedding model for the retrieval evaluation: words and word
+ * bigrams are hashed into a fixed number of signed buckets and the vector is L2-normalized.
+ *
+ * It only captures lexical overlap and its scores share no scale with the production
+ * embedding model, so it checks the harness itself and runs the sweep when no production
+ * embeddings are at hand, where its rankings compare configurations but its similarity
+ * thresholds mean nothing for production.
+ */
+class HashingEmbeddingModel implements EmbeddingModel {
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+(?:[-/.][\\p{L}\\p{N}]+)*");
+
+    private final int dimensions;
+
+    HashingEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        var embeddings = new ArrayList<Embedding>();
+        for (int i = 0; i < request.getInstructions().size(); i++) {
+            embeddings.add(new Embedding(embed(request.getInstructions().get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public float[] embed(String text) {
+        var vector = new float[dimensions];
+
+        var matcher = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        String previous = null;
+        while (matcher.find()) {
+            var token = matcher.group();
+            add(vector, token, 1.0f);
+            if (previous != null) {
+                add(vector, previous + " " + token, 0.5f);
+            }
+            previous = token;
+        }
+
+        double norm = 0.0;
+        for (var value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0.0) {
+            var scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        var crc = new CRC32();
+        crc.update(feature.getBytes(StandardCharsets.UTF_8));
+        var hash = crc.getValue();
+        // Low bits pick the bucket, one high bit the sign, so collisions cancel out on average
+        vector[(int) (hash % dimensions)] += (hash & (1L << 31)) != 0 ? -weight : weight;
+    }
+
+}
@@ -0,0 +1,384 @@
+package com.pfizer.ai.rag.evaluation;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pfizer.ai.config.PingFederateTokenProvider;
+import com.pfizer.ai.rag.indexing.ClinicalSectionTextSplitter;
+import com.pfizer.ai.rag.indexing.RAGNeo4jChunkWriter;
+import com.pfizer.ai.rag.indexing.RAGTikaDocumentReader;
+
+/**
+ * Offline retrieval evaluation over the sample trial documents, used to pick
+ * {@code rag.indexing.splitter}, {@code rag.indexing.chunk-size}, {@code rag.vector.search.top-k}
+ * and {@code rag.vector.search.similarity-threshold}.
+ *
+ * The documents are parsed and split the way the indexing service does it, embedded with the
+ * production embedding model into a {@link SimpleVectorStore}, and every question of
+ * {@code evaluation/golden-set.json} is searched for each configuration of the sweep. A chunk
+ * is relevant to a question if it comes from the question's source and contains one of its
+ * answer snippets, ignoring case and whitespace. The report, logged and written to
+ * {@code target/evaluation/retrieval-sweep.csv}, gives per configuration the mean recall@k,
+ * MRR, prompt tokens of the retrieved context and in-memory retrieval latency.
+ *
+ * Similarity thresholds only mean something on the scale of the production model, so the
+ * embeddings are replayed from {@code src/test/resources/evaluation/embeddings.json}, or from
+ * the file given with {@code -Drag.evaluation.embeddings}. Without that file and without
+ * gateway credentials, the sweep runs offline on {@link HashingEmbeddingModel}: its recall, MRR
+ * and prompt tokens still compare splitters, chunk sizes and top-k, but its thresholds do not
+ * carry over to the production model. The report names the embedding model it was made with.
+ *
+ * To record or refresh the embeddings, e.g. after a golden set, splitter or embedding model
+ * change, export {@code PING_CLIENT_ID}, {@code PING_CLIENT_SECRET}, {@code PING_TOKEN_URL} and
+ * {@code OPENAI_API_BASE_URL} as for the application, delete the file to drop stale texts and
+ * run the sweep: texts missing from the file are embedded through the gateway and the file is
+ * rewritten, ready to be committed.
+ *
+ * Needs no Neo4j, but takes a while, so it only runs with
+ * {@code mvn test -Drag.evaluation=true -Dtest=RetrievalEvaluationTests}.
+ */
+@EnabledIfSystemProperty(named = "rag.evaluation", matches = "true")
+public class RetrievalEvaluationTests {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetrievalEvaluationTests.class);
+
+    private static final List<String> SPLITTERS = List.of("section", "token");
+
+    private static final List<Integer> CHUNK_SIZES = List.of(200, 400, 800);
+
+    private static final List<Integer> TOP_KS = List.of(1, 2, 4, 8);
+
+    // Neo4j cosine scores, (1 + cosine similarity) / 2, as configured in the application
+    private static final List<Double> SIMILARITY_THRESHOLDS = List.of(0.0, 0.5, 0.6, 0.7, 0.8);
+
+    // Same model and dimensions as spring.ai.openai.embedding.options
+    private static final String EMBEDDING_MODEL = "text-embedding-3-small";
+
+    private static final int EMBEDDING_DIMENSIONS = 1536;
+
+    private static final Path EMBEDDINGS = Path.of("src", "test", "resources", "evaluation", "embeddings.json");
+
+    private static final int HASHING_DIMENSIONS = 1024;
+
+    private static final int MEASURED_RUNS = 5;
+
+    private static final Path REPORT = Path.of("target", "evaluation", "retrieval-sweep.csv");
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    record GoldenQuestion(String id, String source, String question, List<String> answers) {
+    }
+
+    record GoldenSet(String documents, List<GoldenQuestion> questions) {
+    }
+
+    record Result(String splitter, int chunkSize, int chunks, int answerable, int topK, double similarityThreshold,
+            double recall, double mrr, double promptTokens, double meanLatencyMillis, double p95LatencyMillis) {
+    }
+
+    @Test
+    void sweepsTopKThresholdAndChunkSize() throws IOException {
+        var productionEmbeddingModel = productionEmbeddingModel();
+        var embeddingModel = productionEmbeddingModel != null ? productionEmbeddingModel
+                : new HashingEmbeddingModel(HASHING_DIMENSIONS);
+        var embeddingModelName = productionEmbeddingModel != null ? EMBEDDING_MODEL
+                : "hashing-" + HASHING_DIMENSIONS;
+        var goldenSet = goldenSet();
+        var documents = parseDocuments(goldenSet);
+        assertAnswersArePresent(goldenSet, documents);
+
+        List<Result> results;
+        try {
+            results = sweep(embeddingModel, goldenSet, documents, SPLITTERS, CHUNK_SIZES, TOP_KS,
+                    SIMILARITY_THRESHOLDS);
+        } finally {
+            // Keeps what the gateway embedded even if the sweep fails halfway
+            if (productionEmbeddingModel != null) {
+                productionEmbeddingModel.save();
+            }
+        }
+
+        writeReport(results, embeddingModelName);
+        logReport(results, goldenSet.questions().size(), embeddingModelName);
+
+        assertFalse(results.isEmpty());
+        assertTrue(results.stream().anyMatch(result -> result.recall() > 0.0),
+                "No configuration retrieved any relevant chunk");
+    }
+
+    @Test
+    void harnessRetrievesRelevantChunksWithTheHashingModel() throws IOException {
+        var goldenSet = goldenSet();
+        var documents = parseDocuments(goldenSet);
+
+        // Only the ranking is checked, a threshold on lexical overlap scores would not carry over
+        var results = sweep(new HashingEmbeddingModel(HASHING_DIMENSIONS), goldenSet, documents, SPLITTERS,
+                List.of(400), List.of(8), List.of(0.0));
+
+        assertTrue(results.stream().allMatch(result -> result.recall() > 0.0 && result.mrr() > 0.0),
+                "Harness retrieved no relevant chunk: " + results);
+    }
+
+    /**
+     * The production embedding model, replayed from the cached embeddings and backed by the
+     * gateway when its credentials are set, or {@code null} if there are neither.
+     */
+    private static CachedEmbeddingModel productionEmbeddingModel() {
+        var file = Path.of(System.getProperty("rag.evaluation.embeddings", EMBEDDINGS.toString()));
+        var gateway = gatewayEmbeddingModel();
+        if (gateway == null && !Files.exists(file)) {
+            LOG.warn("No gateway credentials and no cached embeddings in {}, sweeping with the hashing model, "
+                    + "whose similarity thresholds do not carry over to {}", file, EMBEDDING_MODEL);
+            return null;
+        }
+
+        LOG.info("Embedding with {} from {}{}", EMBEDDING_MODEL, file, gateway != null ? " and the gateway" : "");
+        return new CachedEmbeddingModel(file, EMBEDDING_MODEL, gateway);
+    }
+
+    /**
+     * Built the way {@code OpenAICustomConfiguration} builds it, minus the rate limiting,
+     * or {@code null} if the credentials are not in the environment.
+     */
+    private static EmbeddingModel gatewayEmbeddingModel() {
+        var clientId = System.getenv("PING_CLIENT_ID");
+        var clientSecret = System.getenv("PING_CLIENT_SECRET");
+        var tokenUrl = System.getenv("PING_TOKEN_URL");
+        var apiBaseUrl = System.getenv("OPENAI_API_BASE_URL");
+        if (clientId == null || clientSecret == null || tokenUrl == null || apiBaseUrl == null) {
+            return null;
+        }
+
+        var tokenProvider = new PingFederateTokenProvider(new RestTemplate(), clientId, clientSecret, tokenUrl);
+        var openAiApi = OpenAiApi.builder()
+                .apiKey(tokenProvider::getAccessToken)
+                .baseUrl(apiBaseUrl)
+                .build();
+        return new OpenAiEmbeddingModel(openAiApi, MetadataMode.EMBED, OpenAiEmbeddingOptions.builder()
+                .model(EMBEDDING_MODEL)
+                .encodingFormat("float")
+                .dimensions(EMBEDDING_DIMENSIONS)
+                .build(), RetryUtils.DEFAULT_RETRY_TEMPLATE);
+    }
+
+    private static GoldenSet goldenSet() throws IOException {
+        return new ObjectMapper().readValue(
+                new ClassPathResource("evaluation/golden-set.json").getInputStream(), GoldenSet.class);
+    }
+
+    private List<Result> sweep(EmbeddingModel embeddingModel, GoldenSet goldenSet, List<Document> documents,
+            List<String> splitters, List<Integer> chunkSizes, List<Integer> topKs, List<Double> similarityThresholds) {
+        var results = new ArrayList<Result>();
+        for (var splitter : splitters) {
+            for (var chunkSize : chunkSizes) {
+                var chunks = textSplitter(splitter, chunkSize).split(documents);
+                var vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+                vectorStore.add(chunks);
+
+                var relevantChunks = relevantChunks(goldenSet, chunks);
+                var answerable = (int) relevantChunks.values().stream().filter(ids -> !ids.isEmpty()).count();
+
+                // Warm up, so the first configuration is not charged for class loading and JIT
+                goldenSet.questions().forEach(question -> search(vectorStore, question.question(), 8, 0.0));
+
+                for (var topK : topKs) {
+                    for (var similarityThreshold : similarityThresholds) {
+                        results.add(evaluate(vectorStore, goldenSet, relevantChunks, splitter, chunkSize,
+                                chunks.size(), answerable, topK, similarityThreshold));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private List<Document> parseDocuments(GoldenSet goldenSet) {
+        var reader = new RAGTikaDocumentReader();
+        var sources = goldenSet.questions().stream().map(GoldenQuestion::source).distinct().toList();
+
+        var documents = new ArrayList<Document>();
+        for (var source : sources) {
+            var resource = new FileSystemResource(Path.of(goldenSet.documents(), source));
+            assertTrue(resource.exists(), "Missing golden set document " + resource.getPath());
+
+            for (var document : reader.readFrom(resource)) {
+                var metadata = new HashMap<>(document.getMetadata());
+                metadata.put(RAGNeo4jChunkWriter.SOURCE_ID_METADATA_KEY, source);
+                documents.add(new Document(document.getText(), metadata));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Guards the golden set against parser changes: an answer missing from the parsed text
+     * would silently count as a retrieval miss for every configuration.
+     */
+    private static void assertAnswersArePresent(GoldenSet goldenSet, List<Document> documents) {
+        var textBySource = documents.stream().collect(Collectors.groupingBy(
+                document -> (String) document.getMetadata().get(RAGNeo4jChunkWriter.SOURCE_ID_METADATA_KEY),
+                Collectors.mapping(document -> normalize(document.getText()), Collectors.joining())));
+
+        for (var question : goldenSet.questions()) {
+            var text = textBySource.getOrDefault(question.source(), "");
+            assertTrue(question.answers().stream().anyMatch(answer -> text.contains(normalize(answer))),
+                    "No answer of golden question " + question.id() + " found in " + question.source());
+        }
+    }
+
+    private static TextSplitter textSplitter(String splitter, int chunkSize) {
+        // Same settings as AIConfig#textSplitter
+        return switch (splitter) {
+            case "section" -> new ClinicalSectionTextSplitter(chunkSize);
+            case "token" -> new TokenTextSplitter(chunkSize, 350, 5, 10000, true);
+            default -> throw new IllegalArgumentException("Unknown splitter: " + splitter);
+        };
+    }
+
+    private static Map<String, List<String>> relevantChunks(GoldenSet goldenSet, List<Document> chunks) {
+        var relevantChunks = new HashMap<String, List<String>>();
+        for (var question : goldenSet.questions()) {
+            relevantChunks.put(question.id(), chunks.stream()
+                    .filter(chunk -> isRelevant(question, chunk))
+                    .map(Document::getId)
+                    .toList());
+        }
+        return relevantChunks;
+    }
+
+    private static boolean isRelevant(GoldenQuestion question, Document chunk) {
+        if (!question.source().equals(chunk.getMetadata().get(RAGNeo4jChunkWriter.SOURCE_ID_METADATA_KEY))) {
+            return false;
+        }
+        var text = normalize(chunk.getText());
+        return question.answers().stream().anyMatch(answer -> text.contains(normalize(answer)));
+    }
+
+    private Result evaluate(SimpleVectorStore vectorStore, GoldenSet goldenSet,
+            Map<String, List<String>> relevantChunks, String splitter, int chunkSize, int chunks, int answerable,
+            int topK, double similarityThreshold) {
+        double recall = 0.0;
+        double reciprocalRanks = 0.0;
+        double promptTokens = 0.0;
+        var latencies = new ArrayList<Double>();
+
+        for (var question : goldenSet.questions()) {
+            List<Document> retrieved = List.of();
+            for (int run = 0; run < MEASURED_RUNS; run++) {
+                var start = System.nanoTime();
+                retrieved = search(vectorStore, question.question(), topK, similarityThreshold);
+                latencies.add((System.nanoTime() - start) / 1_000_000.0);
+            }
+
+            var relevant = relevantChunks.get(question.id());
+            if (!relevant.isEmpty()) {
+                var retrievedRelevant = retrieved.stream()
+                        .filter(document -> relevant.contains(document.getId()))
+                        .count();
+                recall += (double) retrievedRelevant / relevant.size();
+            }
+            for (int rank = 0; rank < retrieved.size(); rank++) {
+                if (relevant.contains(retrieved.get(rank).getId())) {
+                    reciprocalRanks += 1.0 / (rank + 1);
+                    break;
+                }
+            }
+
+            var context = retrieved.stream().map(Document::getText).collect(Collectors.joining("\n\n"));
+            promptTokens += tokenCountEstimator.estimate(question.question() + "\n\n" + context);
+        }
+
+        var questions = goldenSet.questions().size();
+        var sortedLatencies = latencies.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        return new Result(splitter, chunkSize, chunks, answerable, topK, similarityThreshold,
+                recall / questions, reciprocalRanks / questions, promptTokens / questions,
+                Arrays.stream(sortedLatencies).average().orElse(0.0),
+                sortedLatencies[(int) Math.ceil(sortedLatencies.length * 0.95) - 1]);
+    }
+
+    private static List<Document> search(SimpleVectorStore vectorStore, String query, int topK,
+            double similarityThreshold) {
+        // SimpleVectorStore scores by raw cosine similarity, Neo4j by (1 + cosine similarity) / 2
+        var cosineThreshold = Math.max(0.0, 2 * similarityThreshold - 1);
+        return vectorStore.similaritySearch(SearchRequest.builder()
+                .query(query)
+                .topK(topK)
+                .similarityThreshold(cosineThreshold)
+                .build());
+    }
+
+    private static void writeReport(List<Result> results, String embeddingModel) throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add("embedding_model,splitter,chunk_size,chunks,answerable,top_k,similarity_threshold,"
+                + "recall_at_k,mrr,prompt_tokens,mean_latency_ms,p95_latency_ms");
+        for (var result : results) {
+            lines.add(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%.2f,%.4f,%.4f,%.1f,%.3f,%.3f",
+                    embeddingModel, result.splitter(), result.chunkSize(), result.chunks(), result.answerable(), result.topK(),
+                    result.similarityThreshold(), result.recall(), result.mrr(), result.promptTokens(),
+                    result.meanLatencyMillis(), result.p95LatencyMillis()));
+        }
+
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, lines);
+    }
+
+    private static void logReport(List<Result> results, int questions, String embeddingModel) {
+        var table = new StringBuilder(String.format(Locale.ROOT, "%-8s %6s %6s %10s %4s %9s %8s %6s %8s %9s %9s%n",
+                "splitter", "chunk", "chunks", "answerable", "k", "threshold", "recall@k", "MRR", "tokens",
+                "mean ms", "p95 ms"));
+        for (var result : results) {
+            table.append(String.format(Locale.ROOT, "%-8s %6d %6d %10s %4d %9.2f %8.3f %6.3f %8.1f %9.3f %9.3f%n",
+                    result.splitter(), result.chunkSize(), result.chunks(), result.answerable() + "/" + questions,
+                    result.topK(), result.similarityThreshold(), result.recall(), result.mrr(), result.promptTokens(),
+                    result.meanLatencyMillis(), result.p95LatencyMillis()));
+        }
+        LOG.info("Retrieval sweep over {} golden questions with {}, written to {}:\n{}", questions, embeddingModel,
+                REPORT, table);
+
+        // Best recall, then best MRR, then the smallest prompt
+        results.stream()
+                .max(Comparator.comparingDouble(Result::recall)
+                        .thenComparingDouble(Result::mrr)
+                        .thenComparing(Comparator.comparingDouble(Result::promptTokens).reversed()))
+                .ifPresent(best -> LOG.info("Best configuration: {}", best));
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).replaceAll("\\s+", "");
+    }
+
+}
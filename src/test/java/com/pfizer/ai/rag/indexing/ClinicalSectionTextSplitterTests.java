@@ -0,0 +1,104 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+public class ClinicalSectionTextSplitterTests {
+
+    private static final String PROTOCOL = """
+            A Phase 3 Study of Drug X in Adults With Disease Y
+            Sponsor: Example Pharma
+
+            5. Eligibility Criteria
+            5.1 Inclusion Criteria:
+            1. Age 18 years or older at the screening visit
+            2. Histologically confirmed diagnosis of disease Y
+            3. ECOG performance status of 0 or 1
+            5.2 Exclusion Criteria
+            - Prior treatment with drug X in any setting
+            - Pregnant or breastfeeding women
+            Arms and Interventions
+            Arm A: drug X 10 mg once daily
+            Arm B: matching placebo once daily
+            Primary Outcome Measures: Progression-free survival at 12 months
+            """;
+
+    @Test
+    void alignsChunksToSectionsAndTagsThem() {
+        var chunks = new ClinicalSectionTextSplitter(800)
+                .apply(List.of(new Document(PROTOCOL, Map.of("source", "protocol.pdf"))));
+
+        assertEquals(List.of("general", "inclusion_criteria", "exclusion_criteria", "arms_interventions",
+                "primary_outcomes"), sections(chunks));
+
+        var inclusion = chunks.get(1);
+        assertEquals("5.1 Inclusion Criteria", inclusion.getMetadata().get(ClinicalSectionTextSplitter.SECTION_TITLE_METADATA_KEY));
+        assertEquals("protocol.pdf", inclusion.getMetadata().get("source"));
+        assertTrue(inclusion.getText().contains("1. Age 18 years"));
+        assertTrue(inclusion.getText().contains("3. ECOG performance status"));
+        assertTrue(chunks.get(4).getText().endsWith("Progression-free survival at 12 months"));
+    }
+
+    @Test
+    void splitsLongSectionsBetweenListItemsAndRepeatsTheHeading() {
+        var chunks = new ClinicalSectionTextSplitter(25)
+                .apply(List.of(new Document(PROTOCOL)));
+
+        var inclusion = chunks.stream()
+                .filter(chunk -> "inclusion_criteria".equals(chunk.getMetadata().get(ClinicalSectionTextSplitter.SECTION_METADATA_KEY)))
+                .toList();
+
+        assertTrue(inclusion.size() > 1);
+        for (var chunk : inclusion) {
+            assertTrue(chunk.getText().startsWith("5.1 Inclusion Criteria"));
+            assertEquals(inclusion.size(), chunk.getMetadata().get(ClinicalSectionTextSplitter.SECTION_PARTS_METADATA_KEY));
+        }
+        assertTrue(inclusion.get(1).getText().startsWith("5.1 Inclusion Criteria (continued)"));
+        // No criterion is cut in the middle
+        assertTrue(inclusion.stream().anyMatch(chunk -> chunk.getText().contains("2. Histologically confirmed diagnosis of disease Y")));
+    }
+
+    @Test
+    void keepsDosingFieldsAndTablesInTheirSection() {
+        var text = """
+                6. Dosing and Administration
+                Dose: 10 mg once daily with food
+                Intervention: Drug X 10 mg tablets
+                Design: open-label, no dose escalation
+                Dose Level | Dose | Frequency
+                1 | 10 mg | once daily
+                Safety
+                2 | 20 mg | once daily
+                Dose    Schedule    Route
+                7. Safety: weekly liver function tests
+                Safety Assessments
+                Adverse events are graded per CTCAE v5.0.
+                """;
+
+        var chunks = new ClinicalSectionTextSplitter(800).apply(List.of(new Document(text)));
+
+        assertEquals(List.of("dosing", "safety"), sections(chunks));
+        var dosing = chunks.get(0).getText();
+        assertTrue(dosing.startsWith("6. Dosing and Administration"));
+        assertTrue(dosing.contains("Dose: 10 mg once daily with food"));
+        assertTrue(dosing.contains("Intervention: Drug X 10 mg tablets"));
+        assertTrue(dosing.contains("Design: open-label"));
+        assertTrue(dosing.contains("1 | 10 mg | once daily\nSafety\n2 | 20 mg | once daily"));
+        assertTrue(dosing.contains("7. Safety: weekly liver function tests"));
+        assertEquals("Safety Assessments",
+                chunks.get(1).getMetadata().get(ClinicalSectionTextSplitter.SECTION_TITLE_METADATA_KEY));
+    }
+
+    private static List<Object> sections(List<Document> chunks) {
+        return chunks.stream()
+                .map(chunk -> chunk.getMetadata().get(ClinicalSectionTextSplitter.SECTION_METADATA_KEY))
+                .toList();
+    }
+
+}
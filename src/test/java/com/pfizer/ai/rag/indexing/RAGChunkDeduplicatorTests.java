@@ -0,0 +1,159 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class RAGChunkDeduplicatorTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void linksNearDuplicatesWithinTheThreshold() {
+        var deduplicator = deduplicator(3);
+        index(deduplicator, "a.pdf", null, chunk("a#0", SimHashTests.CRITERIA));
+
+        var result = deduplicator.deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA_40_NG),
+                chunk("b#1", SimHashTests.CRITERIA_24_MONTHS)), "b.pdf", null);
+
+        assertEquals(1, result.duplicates().size());
+        var duplicate = result.duplicates().get(0);
+        assertEquals("b#0", duplicate.chunk().getId());
+        assertEquals("a#0", duplicate.canonicalId());
+        assertEquals(3, duplicate.distance());
+        assertEquals("a#0", duplicate.chunk().getMetadata().get(RAGChunkDeduplicator.DUPLICATE_OF_METADATA_KEY));
+        assertEquals(List.of("b#1"), ids(result.uniqueChunks()));
+    }
+
+    @Test
+    void thresholdBoundsTheDistance() {
+        var deduplicator = deduplicator(2);
+        index(deduplicator, "a.pdf", null, chunk("a#0", SimHashTests.CRITERIA));
+
+        var result = deduplicator.deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA_40_NG)), "b.pdf", null);
+
+        assertTrue(result.duplicates().isEmpty());
+    }
+
+    @Test
+    void ignoresOtherCollectionsAndTheSourceBeingReplaced() {
+        var deduplicator = deduplicator(3);
+        index(deduplicator, "a.pdf", "nct1", chunk("a#0", SimHashTests.CRITERIA));
+
+        assertTrue(deduplicator.deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA)), "b.pdf", "nct2")
+                .duplicates().isEmpty());
+        assertTrue(deduplicator.deduplicate(List.of(chunk("a#0", SimHashTests.CRITERIA)), "a.pdf", "nct1")
+                .duplicates().isEmpty());
+        assertEquals(1, deduplicator.deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA)), "b.pdf", "nct1")
+                .duplicates().size());
+    }
+
+    @Test
+    void linksRepeatedChunksOfTheSameJobToTheFirstCopy() {
+        var result = deduplicator(3).deduplicate(List.of(chunk("a#0", SimHashTests.CRITERIA),
+                chunk("a#1", SimHashTests.DOSING), chunk("a#2", SimHashTests.CRITERIA_40_NG)), "a.pdf", null);
+
+        assertEquals(List.of("a#0", "a#1"), ids(result.uniqueChunks()));
+        assertEquals("a#0", result.duplicates().get(0).canonicalId());
+        assertEquals(1.0 / 3, result.dedupRatio(), 1e-9);
+    }
+
+    @Test
+    void findsEveryMatchABruteForceScanFinds() {
+        var deduplicator = deduplicator(3);
+        var random = new Random(7);
+        var words = SimHashTests.CRITERIA.split(" ");
+        var stored = new ArrayList<RAGChunkDeduplicator.Fingerprint>();
+
+        for (int i = 0; i < 300; i++) {
+            // Up to three word substitutions, so distances straddle the threshold
+            var variant = words.clone();
+            for (int edits = random.nextInt(4); edits > 0; edits--) {
+                variant[random.nextInt(variant.length)] = "w" + random.nextInt(20);
+            }
+            var text = String.join(" ", variant);
+            var source = "s" + i + ".pdf";
+            long value = SimHash.fingerprint(text);
+
+            int closest = stored.stream()
+                    .mapToInt(fingerprint -> SimHash.hammingDistance(value, fingerprint.value()))
+                    .min().orElse(Integer.MAX_VALUE);
+
+            var result = deduplicator.deduplicate(List.of(chunk(source + "#0", text)), source, null);
+            if (closest <= 3) {
+                assertEquals(1, result.duplicates().size(), "missed a duplicate at distance " + closest);
+                assertEquals(closest, result.duplicates().get(0).distance());
+            } else {
+                assertEquals(1, result.uniqueChunks().size());
+                stored.addAll(result.newFingerprints());
+            }
+            deduplicator.register(source, result);
+        }
+    }
+
+    @Test
+    void fingerprintsSurviveARestartUntilTheirSourceIsForgotten() {
+        index(deduplicator(3), "a.pdf", null, chunk("a#0", SimHashTests.CRITERIA));
+
+        var restarted = deduplicator(3);
+        assertEquals(1, restarted.deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA)), "b.pdf", null)
+                .duplicates().size());
+
+        restarted.forget(List.of("a.pdf"));
+        assertTrue(deduplicator(3).deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA)), "b.pdf", null)
+                .duplicates().isEmpty());
+    }
+
+    @Test
+    void promotedDuplicateReplacesTheFingerprintOfItsMissingChunk() {
+        var deduplicator = deduplicator(3);
+        index(deduplicator, "a.pdf", null, chunk("a#0", SimHashTests.CRITERIA));
+
+        var result = deduplicator.deduplicate(List.of(chunk("b#0", SimHashTests.CRITERIA)), "b.pdf", null);
+        var promoted = result.promote(List.of("b#0"));
+        deduplicator.register("b.pdf", promoted);
+
+        assertEquals(List.of("b#0"), ids(promoted.uniqueChunks()));
+        assertTrue(promoted.duplicates().isEmpty());
+        assertEquals(List.of("a#0"), promoted.staleChunkIds());
+        assertEquals(null, promoted.uniqueChunks().get(0).getMetadata()
+                .get(RAGChunkDeduplicator.DUPLICATE_OF_METADATA_KEY));
+
+        var next = deduplicator(3).deduplicate(List.of(chunk("c#0", SimHashTests.CRITERIA)), "c.pdf", null);
+        assertEquals("b#0", next.duplicates().get(0).canonicalId());
+    }
+
+    private RAGChunkDeduplicator deduplicator(int hammingThreshold) {
+        var deduplicator = new RAGChunkDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "enabled", true);
+        ReflectionTestUtils.setField(deduplicator, "hammingThreshold", hammingThreshold);
+        ReflectionTestUtils.setField(deduplicator, "fingerprintFile", tempDir.resolve("fingerprints.bin").toString());
+        ReflectionTestUtils.setField(deduplicator, "label", "Document");
+        ReflectionTestUtils.invokeMethod(deduplicator, "loadFingerprints");
+        return deduplicator;
+    }
+
+    private static void index(RAGChunkDeduplicator deduplicator, String source, String collection, Document chunk) {
+        deduplicator.register(source, deduplicator.deduplicate(List.of(chunk), source, collection));
+    }
+
+    private static Document chunk(String id, String text) {
+        return new Document(id, text, new HashMap<>());
+    }
+
+    private static List<String> ids(List<Document> chunks) {
+        return chunks.stream().map(Document::getId).toList();
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+public class RAGChunkStoreTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripsTextAndMetadata() {
+        var file = tempDir.resolve("study" + RAGChunkStore.FILE_EXTENSION);
+        RAGChunkStore.write(file, List.of(chunk("Dose: 10 mg/m² on day 1", Map.of("source", "a.pdf", "page", 3)),
+                chunk("Safety follow-up", Map.of())), false);
+
+        try (var reader = RAGChunkStore.open(file)) {
+            assertEquals(2, reader.size());
+            assertEquals("Dose: 10 mg/m² on day 1", reader.text(0));
+            assertEquals(Map.of("source", "a.pdf", "page", 3), reader.metadata(0));
+            assertEquals("Safety follow-up", reader.document(1).getText());
+            assertEquals(Map.of(), reader.metadata(1));
+        }
+    }
+
+    @Test
+    void appendKeepsTheChunksAlreadyStored() {
+        var file = tempDir.resolve("study" + RAGChunkStore.FILE_EXTENSION);
+        RAGChunkStore.write(file, List.of(chunk("one"), chunk("two")), true);
+        RAGChunkStore.write(file, List.of(chunk("three")), true);
+
+        assertEquals(List.of("one", "two", "three"), texts(file));
+
+        RAGChunkStore.write(file, List.of(chunk("four")), false);
+        assertEquals(List.of("four"), texts(file));
+    }
+
+    @Test
+    void appendThatDidNotCompleteLeavesThePreviousChunks() throws IOException {
+        var file = tempDir.resolve("study" + RAGChunkStore.FILE_EXTENSION);
+        var chunks = new ArrayList<Document>();
+        for (int i = 0; i < 1000; i++) {
+            chunks.add(chunk("chunk " + i + " ".repeat(100)));
+        }
+        RAGChunkStore.write(file, chunks, false);
+        long committed = Files.size(file);
+
+        // Large enough that recovery has to scan back across several blocks
+        RAGChunkStore.write(file, List.of(chunk("x".repeat(200_000)), chunk("last")), true);
+        long appended = Files.size(file);
+
+        for (long cut : new long[] { committed + 1, committed + 10, (committed + appended) / 2, appended - 1 }) {
+            var torn = tempDir.resolve("torn-" + cut + RAGChunkStore.FILE_EXTENSION);
+            Files.copy(file, torn);
+            try (var channel = FileChannel.open(torn, StandardOpenOption.WRITE)) {
+                channel.truncate(cut);
+            }
+
+            assertEquals(1000, texts(torn).size(), "cut at " + cut);
+
+            RAGChunkStore.write(torn, List.of(chunk("retried")), true);
+            var texts = texts(torn);
+            assertEquals(1001, texts.size());
+            assertEquals("chunk 999" + " ".repeat(100), texts.get(999));
+            assertEquals("retried", texts.get(1000));
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotChunkStores() throws IOException {
+        var text = Files.writeString(tempDir.resolve("notes" + RAGChunkStore.FILE_EXTENSION),
+                "Inclusion criteria. ".repeat(20));
+        assertThrows(UncheckedIOException.class, () -> RAGChunkStore.open(text));
+        assertThrows(UncheckedIOException.class, () -> RAGChunkStore.write(text, List.of(chunk("one")), true));
+
+        var headerOnly = Files.writeString(tempDir.resolve("header" + RAGChunkStore.FILE_EXTENSION),
+                "RAGCHNK1" + "\0".repeat(40));
+        assertThrows(UncheckedIOException.class, () -> RAGChunkStore.open(headerOnly));
+    }
+
+    @Test
+    void rewriteLeavesOpenReadersOnTheChunksTheyMapped() throws IOException {
+        var file = tempDir.resolve("study" + RAGChunkStore.FILE_EXTENSION);
+        RAGChunkStore.write(file, List.of(chunk("one " + "x".repeat(100_000)), chunk("two")), false);
+
+        try (var reader = RAGChunkStore.open(file)) {
+            RAGChunkStore.write(file, List.of(chunk("three")), false);
+
+            assertEquals("two", reader.text(1));
+        }
+        assertEquals(List.of("three"), texts(file));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void closedReaderRefusesToRead() {
+        var file = tempDir.resolve("study" + RAGChunkStore.FILE_EXTENSION);
+        RAGChunkStore.write(file, List.of(chunk("one")), false);
+
+        var reader = RAGChunkStore.open(file);
+        reader.close();
+        reader.close();
+
+        assertThrows(IllegalStateException.class, () -> reader.text(0));
+    }
+
+    private static List<String> texts(Path file) {
+        try (var reader = RAGChunkStore.open(file)) {
+            var texts = new ArrayList<String>();
+            for (int i = 0; i < reader.size(); i++) {
+                texts.add(reader.text(i));
+            }
+            return texts;
+        }
+    }
+
+    private static Document chunk(String text) {
+        return chunk(text, Map.of());
+    }
+
+    private static Document chunk(String text, Map<String, Object> metadata) {
+        return new Document(text, metadata);
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.Neo4jContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers(disabledWithoutDocker = true)
+public class RAGNeo4jChunkWriterTests {
+
+    @Container
+    static final Neo4jContainer<?> NEO4J = new Neo4jContainer<>("neo4j:5.26").withoutAuthentication();
+
+    @TempDir
+    Path tempDir;
+
+    private Driver driver;
+
+    private RAGVectorShardRouter shardRouter;
+
+    private RAGChunkDeduplicator deduplicator;
+
+    private RAGNeo4jChunkWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        driver = GraphDatabase.driver(NEO4J.getBoltUrl(), AuthTokens.none());
+        try (var session = driver.session()) {
+            session.run("MATCH (n) DETACH DELETE n").consume();
+        }
+
+        shardRouter = new RAGVectorShardRouter();
+        ReflectionTestUtils.setField(shardRouter, "driver", driver);
+        ReflectionTestUtils.setField(shardRouter, "label", "Document");
+        ReflectionTestUtils.setField(shardRouter, "indexName", "spring-ai-document-index");
+        ReflectionTestUtils.setField(shardRouter, "embeddingProperty", "embedding");
+        ReflectionTestUtils.setField(shardRouter, "embeddingDimension", TestEmbeddingModel.DIMENSIONS);
+        ReflectionTestUtils.setField(shardRouter, "distanceType", "cosine");
+
+        deduplicator = new RAGChunkDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "enabled", true);
+        ReflectionTestUtils.setField(deduplicator, "hammingThreshold", 3);
+        ReflectionTestUtils.setField(deduplicator, "fingerprintFile", tempDir.resolve("fingerprints.bin").toString());
+        ReflectionTestUtils.setField(deduplicator, "label", "Document");
+
+        writer = new RAGNeo4jChunkWriter();
+        ReflectionTestUtils.setField(writer, "driver", driver);
+        ReflectionTestUtils.setField(writer, "embeddingModel", new TestEmbeddingModel());
+        ReflectionTestUtils.setField(writer, "duplicateChunkLinker", new RAGDuplicateChunkLinker());
+        ReflectionTestUtils.setField(writer, "chunkDeduplicator", deduplicator);
+        ReflectionTestUtils.setField(writer, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(writer, "label", "Document");
+        ReflectionTestUtils.setField(writer, "embeddingProperty", "embedding");
+        ReflectionTestUtils.setField(writer, "batchSize", 2);
+        ReflectionTestUtils.setField(writer, "parallelism", 2);
+        ReflectionTestUtils.setField(writer, "maxRetries", 0);
+        ReflectionTestUtils.setField(writer, "retryBackoff", Duration.ZERO);
+        ReflectionTestUtils.invokeMethod(writer, "initialize");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(writer, "stopWriterPool");
+        driver.close();
+    }
+
+    @Test
+    void replacesChunksOfASourceAndRemovesStaleOnes() {
+        writer.replaceSource("a.pdf", "nct1", List.of(chunk("a#0", "a.pdf", "zero"), chunk("a#1", "a.pdf", "one"),
+                chunk("a#2", "a.pdf", "two")), List.of());
+        writer.replaceSource("a.pdf", "nct1", List.of(chunk("a#0", "a.pdf", "zero again")), List.of());
+
+        assertEquals(Map.of("a#0", "zero again"), chunkTexts());
+        assertEquals(List.of("Chunk", shardRouter.route("nct1").label()), labelsOf("a#0"));
+    }
+
+    @Test
+    void failedWriteKeepsThePreviousVersionAndDiscardsStagedChunks() {
+        writer.replaceSource("a.pdf", "nct1", List.of(chunk("a#0", "a.pdf", "zero"), chunk("a#1", "a.pdf", "one")),
+                List.of());
+
+        ReflectionTestUtils.setField(writer, "embeddingModel", new TestEmbeddingModel() {
+
+            @Override
+            public float[] embed(String text) {
+                if (text.equals("broken")) {
+                    throw new IllegalStateException("Embedding failed");
+                }
+                return super.embed(text);
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> writer.replaceSource("a.pdf", "nct1",
+                List.of(chunk("a#0", "a.pdf", "zero again"), chunk("a#1", "a.pdf", "one again"),
+                        chunk("a#2", "a.pdf", "broken")),
+                List.of()));
+
+        assertEquals(Map.of("a#0", "zero", "a#1", "one"), chunkTexts());
+        try (var session = driver.session()) {
+            assertEquals(0L, session.run("MATCH (n:StagedChunk) RETURN count(n) AS staged").single()
+                    .get("staged").asLong());
+        }
+    }
+
+    @Test
+    void linksDuplicatesToAnExistingCanonicalChunk() {
+        writer.replaceSource("a.pdf", null, List.of(chunk("a#0", "a.pdf", "criteria")), List.of());
+
+        var stats = writer.replaceSource("b.pdf", null, List.of(),
+                List.of(duplicate(chunk("b#0", "b.pdf", "criteria"), "a#0")));
+
+        assertTrue(stats.promotedChunkIds().isEmpty());
+        assertEquals(Map.of("a#0", "criteria"), chunkTexts());
+        assertEquals(Map.of("b#0", "a#0"), duplicateLinks());
+    }
+
+    @Test
+    void embedsDuplicatesWhoseCanonicalChunkIsGone() {
+        var stats = writer.replaceSource("b.pdf", null, List.of(),
+                List.of(duplicate(chunk("b#0", "b.pdf", "criteria"), "a#0")));
+
+        assertEquals(List.of("b#0"), stats.promotedChunkIds());
+        assertEquals(Map.of("b#0", "criteria"), chunkTexts());
+        assertTrue(duplicateLinks().isEmpty());
+        try (var session = driver.session()) {
+            var record = session.run("MATCH (n:Chunk {id: 'b#0'}) RETURN n").single().get("n");
+            assertEquals(TestEmbeddingModel.DIMENSIONS, record.get("embedding").size());
+            assertTrue(record.get("metadata.duplicate_of").isNull());
+        }
+    }
+
+    @Test
+    void deletesChunksAndDuplicatesOfSources() {
+        writer.replaceSource("a.pdf", "nct1", List.of(chunk("a#0", "a.pdf", "criteria")), List.of());
+        writer.replaceSource("b.pdf", "nct1", List.of(chunk("b#1", "b.pdf", "dosing")),
+                List.of(duplicate(chunk("b#0", "b.pdf", "criteria"), "a#0")));
+
+        assertEquals(1, writer.deleteSources(List.of("b.pdf")));
+
+        assertEquals(Map.of("a#0", "criteria"), chunkTexts());
+        assertTrue(duplicateLinks().isEmpty());
+    }
+
+    @Test
+    void deletingASourcePromotesDuplicatesOfOtherSources() {
+        indexCanonicalAndDuplicate();
+        var canonicalEmbedding = embeddingOf("a#0");
+
+        assertEquals(1, writer.deleteSources(List.of("a.pdf")));
+        deduplicator.forget(List.of("a.pdf"));
+
+        assertEquals(Map.of("b#0", SimHashTests.CRITERIA_40_NG), chunkTexts());
+        assertTrue(duplicateLinks().isEmpty());
+        assertEquals(List.of("Chunk", shardRouter.route("nct1").label()), labelsOf("b#0"));
+        assertEquals(canonicalEmbedding, embeddingOf("b#0"));
+        assertEquals("b.pdf", property("b#0", "metadata.source_id"));
+        assertEquals("nct1", property("b#0", "metadata.collection"));
+        assertEquals(null, property("b#0", "metadata.duplicate_of"));
+
+        // The promoted chunk now stands in for the deleted one
+        var next = deduplicator.deduplicate(List.of(chunk("c#0", "c.pdf", SimHashTests.CRITERIA)), "c.pdf", "nct1");
+        assertEquals("b#0", next.duplicates().get(0).canonicalId());
+    }
+
+    @Test
+    void deletedSourceCanBeIndexedAgainNextToItsPromotedDuplicates() {
+        indexCanonicalAndDuplicate();
+        writer.deleteSources(List.of("a.pdf"));
+        deduplicator.forget(List.of("a.pdf"));
+
+        index("a.pdf", chunk("a#0", "a.pdf", SimHashTests.CRITERIA));
+
+        // Roles are swapped: the promoted chunk is now the canonical one
+        assertEquals(Map.of("b#0", SimHashTests.CRITERIA_40_NG), chunkTexts());
+        assertEquals(Map.of("a#0", "b#0"), duplicateLinks());
+    }
+
+    @Test
+    void rewritingACanonicalChunkWithAnotherTextPromotesItsDuplicates() {
+        indexCanonicalAndDuplicate();
+
+        index("a.pdf", chunk("a#0", "a.pdf", SimHashTests.DOSING));
+
+        assertEquals(Map.of("a#0", SimHashTests.DOSING, "b#0", SimHashTests.CRITERIA_40_NG), chunkTexts());
+        assertTrue(duplicateLinks().isEmpty());
+    }
+
+    @Test
+    void rewritingACanonicalChunkWithTheSameTextKeepsItsDuplicates() {
+        indexCanonicalAndDuplicate();
+
+        index("a.pdf", chunk("a#0", "a.pdf", SimHashTests.CRITERIA));
+
+        assertEquals(Map.of("a#0", SimHashTests.CRITERIA), chunkTexts());
+        assertEquals(Map.of("b#0", "a#0"), duplicateLinks());
+    }
+
+    @Test
+    void sourceWithDuplicatesCanBeDeletedAndIndexedAgain() {
+        indexCanonicalAndDuplicate();
+
+        assertEquals(0, writer.deleteSources(List.of("b.pdf")));
+        deduplicator.forget(List.of("b.pdf"));
+        assertTrue(duplicateLinks().isEmpty());
+
+        index("b.pdf", chunk("b#0", "b.pdf", SimHashTests.CRITERIA_40_NG));
+
+        assertEquals(Map.of("a#0", SimHashTests.CRITERIA), chunkTexts());
+        assertEquals(Map.of("b#0", "a#0"), duplicateLinks());
+        assertEquals(SimHashTests.CRITERIA_40_NG, property("b#0", "text"));
+    }
+
+    /**
+     * Indexes a.pdf and b.pdf in collection nct1, b.pdf being a near-duplicate of a.pdf.
+     */
+    private void indexCanonicalAndDuplicate() {
+        index("a.pdf", chunk("a#0", "a.pdf", SimHashTests.CRITERIA));
+        index("b.pdf", chunk("b#0", "b.pdf", SimHashTests.CRITERIA_40_NG));
+        assertEquals(Map.of("b#0", "a#0"), duplicateLinks());
+    }
+
+    private void index(String source, Document chunk) {
+        chunk.getMetadata().put("collection", "nct1");
+        var deduplication = deduplicator.deduplicate(List.of(chunk), source, "nct1");
+        var stats = writer.replaceSource(source, "nct1", deduplication.uniqueChunks(), deduplication.duplicates());
+        deduplicator.register(source, deduplication.promote(stats.promotedChunkIds()));
+    }
+
+    static Document chunk(String id, String source, String text) {
+        var metadata = new HashMap<String, Object>();
+        metadata.put(RAGNeo4jChunkWriter.SOURCE_ID_METADATA_KEY, source);
+        return new Document(id, text, metadata);
+    }
+
+    static RAGChunkDeduplicator.DuplicateChunk duplicate(Document chunk, String canonicalId) {
+        chunk.getMetadata().put(RAGChunkDeduplicator.DUPLICATE_OF_METADATA_KEY, canonicalId);
+        return new RAGChunkDeduplicator.DuplicateChunk(chunk, canonicalId, 0, 0L);
+    }
+
+    private Map<String, String> chunkTexts() {
+        try (var session = driver.session()) {
+            var texts = new HashMap<String, String>();
+            session.run("MATCH (n:Chunk) RETURN n.id AS id, n.text AS text")
+                    .forEachRemaining(record -> texts.put(record.get("id").asString(), record.get("text").asString()));
+            return texts;
+        }
+    }
+
+    private Map<String, String> duplicateLinks() {
+        try (var session = driver.session()) {
+            var links = new HashMap<String, String>();
+            session.run("MATCH (d:DuplicateChunk)-[:DUPLICATE_OF]->(c) RETURN d.id AS id, c.id AS canonicalId")
+                    .forEachRemaining(record -> links.put(record.get("id").asString(),
+                            record.get("canonicalId").asString()));
+            return links;
+        }
+    }
+
+    private List<Object> embeddingOf(String id) {
+        try (var session = driver.session()) {
+            return session.run("MATCH (n:Chunk {id: $id}) RETURN n.embedding AS embedding", Map.of("id", id))
+                    .single().get("embedding").asList();
+        }
+    }
+
+    private Object property(String id, String key) {
+        try (var session = driver.session()) {
+            return session.run("MATCH (n {id: $id}) RETURN n[$key] AS value", Map.of("id", id, "key", key))
+                    .single().get("value").asObject();
+        }
+    }
+
+    private List<String> labelsOf(String id) {
+        try (var session = driver.session()) {
+            return session.run("MATCH (n {id: $id}) RETURN labels(n) AS labels", Map.of("id", id)).single()
+                    .get("labels").asList(value -> value.asString()).stream().sorted().toList();
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.FormPartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+public class RAGUploadSpoolerTests {
+
+    private static final byte[] PROTOCOL = "Protocol A. Inclusion criteria. ".repeat(1000)
+            .getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void spoolsTheContentAndItsHash() throws Exception {
+        var upload = spooler(DataSize.ofMegabytes(1)).spool(buffers(PROTOCOL), "protocol.pdf").block();
+
+        assertEquals("protocol.pdf", upload.filename());
+        assertTrue(upload.file().getFileName().toString().endsWith(".pdf"));
+        assertArrayEquals(PROTOCOL, Files.readAllBytes(upload.file()));
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(PROTOCOL)),
+                upload.sha256());
+    }
+
+    @Test
+    void hashIdentifiesTheContentNotTheFilename() {
+        var spooler = spooler(DataSize.ofMegabytes(1));
+        var amendment = "Protocol A, amendment 2.".getBytes(StandardCharsets.UTF_8);
+
+        var first = spooler.spool(buffers(PROTOCOL), "protocol.pdf").block();
+        var renamed = spooler.spool(buffers(PROTOCOL), "copy of protocol.pdf").block();
+        var sameName = spooler.spool(buffers(amendment), "protocol.pdf").block();
+
+        assertEquals(first.sha256(), renamed.sha256());
+        assertNotEquals(first.sha256(), sameName.sha256());
+    }
+
+    @Test
+    void rejectsUploadsOverTheLimitAndRemovesTheSpoolFile() throws IOException {
+        StepVerifier.create(spooler(DataSize.ofKilobytes(4)).spool(buffers(PROTOCOL), "protocol.pdf"))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        assertSpoolIsEmpty();
+    }
+
+    @Test
+    void spoolsOnlyTheNamedFilePart() throws IOException {
+        var spooler = spooler(DataSize.ofMegabytes(1));
+        var parts = Flux.<PartEvent>concat(
+                FormPartEvent.create("keywords", "nct01"),
+                FilePartEvent.create("attachment", "other.pdf", MediaType.APPLICATION_PDF, buffers(new byte[10])),
+                FilePartEvent.create("file", "protocol.pdf", MediaType.APPLICATION_PDF, buffers(PROTOCOL)));
+
+        var upload = spooler.spoolFilePart(parts, "file").block();
+
+        assertEquals("protocol.pdf", upload.filename());
+        assertArrayEquals(PROTOCOL, Files.readAllBytes(upload.file()));
+
+        spooler.release(upload);
+        assertFalse(Files.exists(upload.file()));
+        assertSpoolIsEmpty();
+    }
+
+    @Test
+    void failsWithoutTheNamedFilePart() {
+        var parts = Flux.<PartEvent>from(FormPartEvent.create("keywords", "nct01"));
+
+        StepVerifier.create(spooler(DataSize.ofMegabytes(1)).spoolFilePart(parts, "file"))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    private RAGUploadSpooler spooler(DataSize maxSize) {
+        var spooler = new RAGUploadSpooler();
+        ReflectionTestUtils.setField(spooler, "spoolDir", tempDir.resolve("spool").toString());
+        ReflectionTestUtils.setField(spooler, "maxSize", maxSize);
+        return spooler;
+    }
+
+    private void assertSpoolIsEmpty() throws IOException {
+        try (var files = Files.list(tempDir.resolve("spool"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static Flux<DataBuffer> buffers(byte[] content) {
+        // Several small buffers, as a multipart body arrives
+        return Flux.range(0, (content.length + 1023) / 1024)
+                .<DataBuffer>map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        Arrays.copyOfRange(content, i * 1024, Math.min(content.length, (i + 1) * 1024))));
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RAGUrlFetcherTests {
+
+    private static final String ETAG = "\"v1\"";
+
+    private static final String INDEXED_AS = "collection=nct1;keywords=[]";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private final AtomicInteger fullDownloads = new AtomicInteger();
+
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    private RAGUrlFetcher fetcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/protocol.txt", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullDownloads.incrementAndGet();
+            var body = "Inclusion criteria".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/large.bin", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (var out = exchange.getResponseBody()) {
+                for (int i = 0; i < 64; i++) {
+                    out.write(new byte[1024]);
+                }
+            } catch (Exception e) {
+                // client gave up once the limit was exceeded
+            }
+            exchange.close();
+        });
+        server.createContext("/stalled.pdf", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (var out = exchange.getResponseBody()) {
+                out.write(new byte[1024]);
+                out.flush();
+                stalled.await();
+            } catch (Exception e) {
+                // client gave up at its deadline
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        fetcher = new RAGUrlFetcher();
+        ReflectionTestUtils.setField(fetcher, "spoolDir", tempDir.resolve("spool").toString());
+        ReflectionTestUtils.setField(fetcher, "connectTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(fetcher, "readTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(fetcher, "downloadTimeout", Duration.ofMillis(500));
+        ReflectionTestUtils.setField(fetcher, "maxSize", DataSize.ofKilobytes(16));
+        ReflectionTestUtils.setField(fetcher, "maxConcurrency", 2);
+        ReflectionTestUtils.setField(fetcher, "validatorsFile", tempDir.resolve("validators.properties").toString());
+        ReflectionTestUtils.invokeMethod(fetcher, "initialize");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(fetcher, "shutdown");
+        stalled.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void unchangedSourceIsSkippedOnceCommitted() throws Exception {
+        var first = fetcher.fetch(baseUrl + "/protocol.txt", INDEXED_AS);
+        assertEquals(RAGUrlFetcher.FetchStatus.FETCHED, first.status());
+        assertEquals("Inclusion criteria", Files.readString(first.file()));
+
+        fetcher.commit(first);
+        fetcher.release(first);
+
+        var second = fetcher.fetch(baseUrl + "/protocol.txt", INDEXED_AS);
+        assertTrue(second.unchanged());
+        assertEquals(1, fullDownloads.get());
+        assertSpoolEmpty();
+    }
+
+    @Test
+    void sourceIndexedDifferentlyIsDownloadedAgain() {
+        var url = baseUrl + "/protocol.txt";
+        var first = fetcher.fetch(url, INDEXED_AS);
+        fetcher.commit(first);
+        fetcher.release(first);
+
+        var second = fetcher.fetch(url, "collection=nct2;keywords=[]");
+        assertEquals(RAGUrlFetcher.FetchStatus.FETCHED, second.status());
+        fetcher.commit(second);
+        fetcher.release(second);
+
+        // Only the last committed indexing is remembered
+        var third = fetcher.fetch(url, INDEXED_AS);
+        assertEquals(RAGUrlFetcher.FetchStatus.FETCHED, third.status());
+        fetcher.release(third);
+        assertEquals(3, fullDownloads.get());
+    }
+
+    @Test
+    void stalledBodyFailsAtTheDownloadDeadline() {
+        long startedAt = System.nanoTime();
+
+        var e = assertThrows(UncheckedIOException.class, () -> fetcher.fetch(baseUrl + "/stalled.pdf", null));
+
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertTrue(Duration.ofNanos(System.nanoTime() - startedAt).compareTo(Duration.ofSeconds(4)) < 0);
+        assertSpoolEmpty();
+    }
+
+    @Test
+    void forgottenSourceIsDownloadedAgain() {
+        var url = baseUrl + "/protocol.txt";
+        var first = fetcher.fetch(url, INDEXED_AS);
+        fetcher.commit(first);
+        fetcher.release(first);
+
+        fetcher.forget(List.of(url));
+
+        var second = fetcher.fetch(url, INDEXED_AS);
+        assertEquals(RAGUrlFetcher.FetchStatus.FETCHED, second.status());
+        fetcher.release(second);
+    }
+
+    @Test
+    void fetchesSeveralUrlsConcurrently() {
+        var results = fetcher.fetchAll(List.of(baseUrl + "/protocol.txt", baseUrl + "/protocol.txt",
+                baseUrl + "/protocol.txt"), null);
+
+        assertEquals(3, results.size());
+        results.forEach(result -> assertEquals(18, result.bytes()));
+        results.forEach(fetcher::release);
+        assertSpoolEmpty();
+    }
+
+    @Test
+    void oversizedDownloadIsRejectedAndRemoved() {
+        assertThrows(IllegalArgumentException.class, () -> fetcher.fetch(baseUrl + "/large.bin", null));
+        assertSpoolEmpty();
+    }
+
+    @Test
+    void spoolFilesOnlyKeepAPlainExtension() {
+        assertEquals(".pdf", suffixOf("https://example.org/trials/protocol.pdf?version=2"));
+        assertEquals(null, suffixOf("https://example.org/trials/protocol.p%2Fdf"));
+        assertEquals(null, suffixOf("https://example.org/trials/protocol.pdf%00"));
+        assertEquals(null, suffixOf("https://example.org/trials/protocol.final_v2"));
+        assertEquals(null, suffixOf("https://example.org/trials/"));
+        assertEquals(null, suffixOf("https://example.org/trials/protocol a.pdf"));
+    }
+
+    private static String suffixOf(String url) {
+        return ReflectionTestUtils.invokeMethod(RAGUrlFetcher.class, "suffixOf", url);
+    }
+
+    private void assertSpoolEmpty() {
+        try (var files = Files.list(tempDir.resolve("spool"))) {
+            assertEquals(0, files.count());
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
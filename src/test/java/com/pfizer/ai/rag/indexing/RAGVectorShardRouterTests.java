@@ -0,0 +1,132 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.Neo4jContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers(disabledWithoutDocker = true)
+public class RAGVectorShardRouterTests {
+
+    @Container
+    static final Neo4jContainer<?> NEO4J = new Neo4jContainer<>("neo4j:5.26").withoutAuthentication();
+
+    private Driver driver;
+
+    @BeforeEach
+    void setUp() {
+        driver = GraphDatabase.driver(NEO4J.getBoltUrl(), AuthTokens.none());
+        try (var session = driver.session()) {
+            session.run("SHOW VECTOR INDEXES YIELD name").list(record -> record.get("name").asString())
+                    .forEach(name -> session.run("DROP INDEX `" + name + "`").consume());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.close();
+    }
+
+    @Test
+    void routesCollectionsToNormalizedShards() {
+        var router = router(Duration.ofHours(1));
+
+        var shard = router.route(" NCT-0423 ");
+        assertEquals("nct_0423_807d7108", shard.collection());
+        assertEquals("Document_nct_0423_807d7108", shard.label());
+        assertEquals("spring-ai-document-index-nct_0423_807d7108", shard.indexName());
+
+        assertTrue(router.route(null).isDefault());
+        assertTrue(router.route(" ").isDefault());
+        assertNull(router.defaultShard().collection());
+    }
+
+    @Test
+    void collectionsThatNormalizeAlikeGetTheirOwnShards() {
+        var router = router(Duration.ofHours(1));
+
+        var shards = List.of(router.route("NCT-01"), router.route("NCT_01"), router.route("nct 01"),
+                router.route("NCT01"), router.route("nct01"));
+
+        assertEquals(5, shards.stream().map(RAGVectorShardRouter.Shard::indexName).distinct().count());
+        assertEquals(router.route("NCT-01"), router.route(" NCT-01 "));
+    }
+
+    @Test
+    void listsShardsCreatedByOtherInstances() {
+        router(Duration.ofHours(1)).ensureShard("NCT01");
+
+        assertEquals(List.of("", "nct01_714e99d6"), collections(router(Duration.ofHours(1))));
+    }
+
+    @Test
+    void existingShardIsNullForACollectionWithoutIndex() {
+        var other = router(Duration.ofHours(1));
+        var router = router(Duration.ofHours(1));
+        assertEquals(List.of(""), collections(router));
+
+        assertNull(router.existingShard("NCT01"));
+        other.ensureShard("NCT01");
+
+        assertEquals(router.route("NCT01"), router.existingShard("NCT01"));
+        assertTrue(router.existingShard(null).isDefault());
+    }
+
+    @Test
+    void reusesTheListedShardsUntilTheRefreshInterval() {
+        var other = router(Duration.ofHours(1));
+        var router = router(Duration.ofHours(1));
+        assertEquals(List.of(""), collections(router));
+
+        other.ensureShard("NCT01");
+        assertEquals(List.of(""), collections(router));
+
+        ReflectionTestUtils.setField(router, "refreshInterval", Duration.ZERO);
+        assertEquals(List.of("", "nct01_714e99d6"), collections(router));
+    }
+
+    @Test
+    void relistsTheShardsAfterCreatingOne() {
+        var other = router(Duration.ofHours(1));
+        var router = router(Duration.ofHours(1));
+        assertEquals(List.of(""), collections(router));
+
+        other.ensureShard("NCT01");
+        router.ensureShard("NCT02");
+
+        assertEquals(List.of("", "nct01_714e99d6", "nct02_89b99c80"), collections(router));
+    }
+
+    private RAGVectorShardRouter router(Duration refreshInterval) {
+        var router = new RAGVectorShardRouter();
+        ReflectionTestUtils.setField(router, "driver", driver);
+        ReflectionTestUtils.setField(router, "label", "Document");
+        ReflectionTestUtils.setField(router, "indexName", "spring-ai-document-index");
+        ReflectionTestUtils.setField(router, "embeddingProperty", "embedding");
+        ReflectionTestUtils.setField(router, "embeddingDimension", 3);
+        ReflectionTestUtils.setField(router, "distanceType", "cosine");
+        ReflectionTestUtils.setField(router, "refreshInterval", refreshInterval);
+        return router;
+    }
+
+    private static List<String> collections(RAGVectorShardRouter router) {
+        return router.allShards().stream()
+                .map(shard -> shard.isDefault() ? "" : shard.collection())
+                .sorted()
+                .toList();
+    }
+
+}
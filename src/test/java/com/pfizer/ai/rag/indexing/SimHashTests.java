@@ -0,0 +1,65 @@
+package com.pfizer.ai.rag.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class SimHashTests {
+
+    static final String CRITERIA = "Inclusion criteria. Male participants aged 18 years or older at screening. "
+            + "Histologically or cytologically confirmed adenocarcinoma of the prostate without small cell features. "
+            + "Metastatic disease in bone documented on bone scan or in soft tissue documented on CT or MRI scan. "
+            + "Surgically or medically castrated with serum testosterone of at most 50 ng per dL at screening. "
+            + "Progressive disease in the setting of medical or surgical castration. Prior to randomization there "
+            + "must be resolution of acute effects of any prior therapy to either baseline severity or CTCAE grade 1 "
+            + "or less. ECOG performance status 0 or 1 with a life expectancy of at least 12 months as assessed by "
+            + "the investigator.";
+
+    // 3 bits away from CRITERIA
+    static final String CRITERIA_40_NG = CRITERIA.replace("50 ng", "40 ng");
+
+    // 5 bits away from CRITERIA
+    static final String CRITERIA_24_MONTHS = CRITERIA.replace("12 months", "24 months");
+
+    static final String DOSING = "Participants will take ARV-471 by mouth with food, one time a day. During the "
+            + "first treatment cycle participants who will get fulvestrant will be given shots into the muscles on "
+            + "day 1 and again 2 weeks later. One treatment cycle is 28 days.";
+
+    @Test
+    void fingerprintsAreStableAcrossRuns() {
+        // Fingerprints are persisted, so the same text must keep the same value across releases
+        assertEquals(0x3e3f5019e93a62adL, SimHash.fingerprint(CRITERIA));
+        assertEquals(0x108ab07fb9e724e1L, SimHash.fingerprint("one two"));
+    }
+
+    @Test
+    void ignoresCaseAndPunctuation() {
+        assertEquals(SimHash.fingerprint("one two"), SimHash.fingerprint("One, TWO."));
+        assertEquals(SimHash.fingerprint(CRITERIA), SimHash.fingerprint(CRITERIA.toUpperCase() + " !!"));
+    }
+
+    @Test
+    void smallEditsStayCloseAndUnrelatedTextsDoNot() {
+        var criteria = SimHash.fingerprint(CRITERIA);
+
+        assertEquals(3, SimHash.hammingDistance(criteria, SimHash.fingerprint(CRITERIA_40_NG)));
+        assertEquals(5, SimHash.hammingDistance(criteria, SimHash.fingerprint(CRITERIA_24_MONTHS)));
+        assertTrue(SimHash.hammingDistance(criteria, SimHash.fingerprint(DOSING)) > 16);
+    }
+
+    @Test
+    void emptyTextHasZeroFingerprint() {
+        assertEquals(0L, SimHash.fingerprint(""));
+        assertEquals(0L, SimHash.fingerprint(null));
+        assertEquals(0L, SimHash.fingerprint(" ... "));
+    }
+
+    @Test
+    void hammingDistanceCountsDifferingBits() {
+        assertEquals(0, SimHash.hammingDistance(42L, 42L));
+        assertEquals(2, SimHash.hammingDistance(0b1011L, 0b0001L));
+        assertEquals(64, SimHash.hammingDistance(0L, -1L));
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.pfizer.ai.rag.indexing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * Small deterministic embedding model for tests against a real Neo4j: equal texts get equal
+ * vectors and different texts almost surely different ones.
+ */
+class TestEmbeddingModel implements EmbeddingModel {
+
+    static final int DIMENSIONS = 8;
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        var embeddings = new ArrayList<Embedding>();
+        for (int i = 0; i < request.getInstructions().size(); i++) {
+            embeddings.add(new Embedding(embed(request.getInstructions().get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public float[] embed(String text) {
+        var vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            var crc = new CRC32();
+            crc.update(i);
+            crc.update(text.getBytes(StandardCharsets.UTF_8));
+            vector[i] = (crc.getValue() % 1000) / 1000.0f + 0.001f;
+        }
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+
+}
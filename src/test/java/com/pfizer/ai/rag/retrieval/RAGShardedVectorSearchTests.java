@@ -0,0 +1,155 @@
+package com.pfizer.ai.rag.retrieval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.Neo4jContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.pfizer.ai.rag.indexing.RAGVectorShardRouter;
+
+@Testcontainers(disabledWithoutDocker = true)
+public class RAGShardedVectorSearchTests {
+
+    @Container
+    static final Neo4jContainer<?> NEO4J = new Neo4jContainer<>("neo4j:5.26").withoutAuthentication();
+
+    private static final float[] QUERY = { 1.0f, 0.0f, 0.0f };
+
+    private Driver driver;
+
+    private RAGVectorShardRouter shardRouter;
+
+    private RAGShardedVectorSearch search;
+
+    @BeforeEach
+    void setUp() {
+        driver = GraphDatabase.driver(NEO4J.getBoltUrl(), AuthTokens.none());
+        try (var session = driver.session()) {
+            session.run("MATCH (n) DETACH DELETE n").consume();
+            session.run("""
+                    CREATE VECTOR INDEX `spring-ai-document-index` IF NOT EXISTS
+                    FOR (n:Document) ON (n.embedding)
+                    OPTIONS {indexConfig: {`vector.dimensions`: 3, `vector.similarity_function`: 'cosine'}}
+                    """).consume();
+        }
+
+        shardRouter = new RAGVectorShardRouter();
+        ReflectionTestUtils.setField(shardRouter, "driver", driver);
+        ReflectionTestUtils.setField(shardRouter, "label", "Document");
+        ReflectionTestUtils.setField(shardRouter, "indexName", "spring-ai-document-index");
+        ReflectionTestUtils.setField(shardRouter, "embeddingProperty", "embedding");
+        ReflectionTestUtils.setField(shardRouter, "embeddingDimension", 3);
+        ReflectionTestUtils.setField(shardRouter, "distanceType", "cosine");
+        ReflectionTestUtils.setField(shardRouter, "refreshInterval", Duration.ofHours(1));
+
+        search = new RAGShardedVectorSearch();
+        ReflectionTestUtils.setField(search, "driver", driver);
+        ReflectionTestUtils.setField(search, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(search, "parallelism", 2);
+        ReflectionTestUtils.invokeMethod(search, "startSearchPool");
+
+        // The best matches are spread over the shards, so only a merge by score gets the order right
+        chunk(shardRouter.defaultShard(), "default-1", 0.9f);
+        chunk(shardRouter.defaultShard(), "default-2", 0.2f);
+        chunk(shardRouter.ensureShard("NCT01"), "nct01-1", 1.0f);
+        chunk(shardRouter.ensureShard("NCT01"), "nct01-2", 0.5f);
+        chunk(shardRouter.ensureShard("NCT02"), "nct02-1", 0.7f);
+        try (var session = driver.session()) {
+            session.run("CALL db.awaitIndexes()").consume();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(search, "stopSearchPool");
+        driver.close();
+    }
+
+    @Test
+    void unscopedSearchMergesTheTopKOfEveryShardByScore() {
+        var matches = search.searchByEmbedding(QUERY, null, 3, 0.0);
+
+        assertEquals(List.of("nct01-1", "default-1", "nct02-1"), ids(matches));
+        assertEquals(Arrays.asList("nct01_714e99d6", null, "nct02_89b99c80"), matches.stream()
+                .map(match -> match.getMetadata().get("collection"))
+                .toList());
+        assertEquals(List.of("nct01-1", "default-1", "nct02-1", "nct01-2", "default-2"),
+                ids(search.searchByEmbedding(QUERY, "", 10, 0.0)));
+    }
+
+    @Test
+    void scopedSearchOnlyQueriesItsShard() {
+        assertEquals(List.of("nct01-1", "nct01-2"), ids(search.searchByEmbedding(QUERY, "NCT01", 3, 0.0)));
+        assertEquals(List.of("nct02-1"), ids(search.searchByEmbedding(QUERY, "NCT02", 3, 0.0)));
+    }
+
+    @Test
+    void scopedSearchOfACollectionWithoutShardFindsNothing() {
+        assertEquals(List.of(), search.searchByEmbedding(QUERY, "NCT03", 3, 0.0));
+        assertEquals(List.of(), search.searchByEmbedding(QUERY, "nct01", 3, 0.0));
+    }
+
+    @Test
+    void thresholdAppliesAcrossShards() {
+        // Neo4j cosine scores are (1 + cosine) / 2, so 0.9 keeps cosines of at least 0.8
+        assertEquals(List.of("nct01-1", "default-1"), ids(search.searchByEmbedding(QUERY, null, 10, 0.9)));
+    }
+
+    @Test
+    void failingShardIsLeftOutOfAnUnscopedSearch() {
+        dropIndex(shardRouter.route("NCT02").indexName());
+
+        assertEquals(List.of("nct01-1", "default-1", "nct01-2"), ids(search.searchByEmbedding(QUERY, null, 3, 0.0)));
+        assertThrows(IllegalStateException.class, () -> search.queryEveryShard(QUERY));
+    }
+
+    @Test
+    void searchFailsWhenNoShardCanBeSearched() {
+        dropIndex(shardRouter.defaultShard().indexName());
+        dropIndex(shardRouter.route("NCT01").indexName());
+        dropIndex(shardRouter.route("NCT02").indexName());
+
+        var failure = assertThrows(IllegalStateException.class, () -> search.searchByEmbedding(QUERY, null, 3, 0.0));
+        assertEquals(2, failure.getSuppressed().length);
+    }
+
+    /**
+     * Stores a chunk whose cosine similarity to {@link #QUERY} is {@code cosine}.
+     */
+    private void chunk(RAGVectorShardRouter.Shard shard, String id, float cosine) {
+        var parameters = new HashMap<String, Object>();
+        parameters.put("id", id);
+        parameters.put("embedding", new float[] { cosine, (float) Math.sqrt(1 - cosine * cosine), 0.0f });
+        parameters.put("collection", shard.collection());
+        try (var session = driver.session()) {
+            session.run("CREATE (n:Chunk:`" + shard.label() + "` {id: $id, text: $id, embedding: $embedding})"
+                    + " SET n.`metadata.collection` = $collection", parameters).consume();
+        }
+    }
+
+    private void dropIndex(String indexName) {
+        try (var session = driver.session()) {
+            session.run("DROP INDEX `" + indexName + "`").consume();
+        }
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+}
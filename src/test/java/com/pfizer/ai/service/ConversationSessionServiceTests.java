@@ -0,0 +1,195 @@
+package com.pfizer.ai.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.Flux;
+
+public class ConversationSessionServiceTests {
+
+    private static final Pattern UUID_PATTERN = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private final List<String> summaryPrompts = new CopyOnWriteArrayList<>();
+
+    private volatile boolean summaryFails;
+
+    private ConversationSessionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ConversationSessionService();
+        ReflectionTestUtils.setField(service, "aiService", new AIService() {
+
+            @Override
+            public String generateBasicResponse(String systemPrompt, String userPrompt) {
+                summaryPrompts.add(userPrompt);
+                if (summaryFails) {
+                    throw new IllegalStateException("Gateway unavailable");
+                }
+                return " The user asked about the ARV-471 dose, 200 mg once daily. ";
+            }
+
+            @Override
+            public Flux<String> streamBasicResponse(String systemPrompt, String userPrompt) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        ReflectionTestUtils.setField(service, "maxSessions", 3);
+        ReflectionTestUtils.setField(service, "ttl", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(service, "historyTokenBudget", 2000);
+        ReflectionTestUtils.setField(service, "keepRecentTurns", 1);
+        ReflectionTestUtils.setField(service, "retrievalReuseSimilarity", 0.9);
+    }
+
+    @Test
+    void mintsRandomSessionIds() {
+        var first = service.create();
+        var second = service.create();
+
+        assertTrue(UUID_PATTERN.matcher(first.id()).matches(), first.id());
+        assertNotEquals(first.id(), second.id());
+        assertSame(first, service.open(first.id()));
+    }
+
+    @Test
+    void rejectsSessionIdsItDidNotMint() {
+        assertThrows(UnknownSessionException.class, () -> service.open("my-session"));
+        assertThrows(UnknownSessionException.class, () -> service.open("0b7a5f6e-9d3c-4c1e-8f7a-2d4b6c8e0a1f"));
+        assertNull(service.open(null));
+        assertNull(service.open(" "));
+    }
+
+    @Test
+    void expiresIdleSessions() throws InterruptedException {
+        ReflectionTestUtils.setField(service, "ttl", Duration.ofMillis(50));
+        var idle = service.create();
+        var active = service.create();
+
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(20);
+            service.open(active.id());
+        }
+
+        assertThrows(UnknownSessionException.class, () -> service.open(idle.id()));
+        assertSame(active, service.open(active.id()));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSession() {
+        var first = service.create();
+        var second = service.create();
+        service.create();
+        service.open(first.id());
+
+        service.create();
+
+        assertSame(first, service.open(first.id()));
+        assertThrows(UnknownSessionException.class, () -> service.open(second.id()));
+    }
+
+    @Test
+    void appendsTheHistoryToTheSystemPrompt() {
+        var session = service.create();
+        assertEquals("Answer from the context.", service.withHistory("Answer from the context.", session));
+
+        service.recordTurn(session, "What is the dose?", "200 mg once daily.");
+
+        assertEquals("""
+                Answer from the context.
+
+                Conversation so far:
+                User: What is the dose?
+                Assistant: 200 mg once daily.""", service.withHistory("Answer from the context.", session));
+        assertEquals("Answer from the context.", service.withHistory("Answer from the context.", null));
+    }
+
+    @Test
+    void recordsStreamedAnswersOnceComplete() {
+        var session = service.create();
+
+        service.recording(session, "What is the dose?", Flux.just("200 mg ", "once daily.")).blockLast();
+        service.recording(session, "And the route?", Flux.just("By ", "mouth")
+                .concatWith(Flux.error(new IllegalStateException("Stream cut")))).onErrorComplete().blockLast();
+
+        assertEquals(List.of(new ConversationSession.Turn("What is the dose?", "200 mg once daily.")),
+                session.turns());
+    }
+
+    @Test
+    void summarizesOlderTurnsOnceOverTheTokenBudget() throws InterruptedException {
+        ReflectionTestUtils.setField(service, "historyTokenBudget", 40);
+        var session = service.create();
+
+        service.recordTurn(session, "What is the dose of ARV-471?", "200 mg by mouth once daily with food, "
+                + "in 28-day cycles, until disease progression or unacceptable toxicity.");
+        service.recordTurn(session, "And fulvestrant?", "500 mg intramuscularly on days 1 and 15 of cycle 1.");
+        awaitCompaction(session);
+
+        assertEquals(1, summaryPrompts.size());
+        assertTrue(summaryPrompts.get(0).contains("User: What is the dose of ARV-471?"));
+        assertFalse(summaryPrompts.get(0).contains("And fulvestrant?"));
+
+        var history = service.withHistory("", session);
+        assertTrue(history.contains("Summary of the earlier conversation: The user asked about the ARV-471 dose, "
+                + "200 mg once daily.\n"), history);
+        assertFalse(history.contains("User: What is the dose of ARV-471?"));
+        assertTrue(history.endsWith("User: And fulvestrant?\nAssistant: 500 mg intramuscularly on days 1 and 15 "
+                + "of cycle 1."), history);
+    }
+
+    @Test
+    void dropsOlderTurnsWhenTheSummaryFails() throws InterruptedException {
+        ReflectionTestUtils.setField(service, "historyTokenBudget", 40);
+        summaryFails = true;
+        var session = service.create();
+
+        service.recordTurn(session, "What is the dose of ARV-471?", "200 mg by mouth once daily with food, "
+                + "in 28-day cycles, until disease progression or unacceptable toxicity.");
+        service.recordTurn(session, "And fulvestrant?", "500 mg intramuscularly on days 1 and 15 of cycle 1.");
+        awaitCompaction(session);
+
+        assertEquals("", session.summary());
+        assertEquals(List.of(new ConversationSession.Turn("And fulvestrant?",
+                "500 mg intramuscularly on days 1 and 15 of cycle 1.")), session.turns());
+    }
+
+    @Test
+    void reusesTheRetrievalOfASimilarFollowUpInTheSameScope() {
+        var session = service.create();
+        var documents = List.of(new Document("ARV-471 200 mg once daily"));
+        service.rememberRetrieval(session, "nct1/4", new float[] { 1.0f, 0.0f }, documents);
+
+        assertEquals(documents, service.reusableRetrieval(session, "nct1/4", new float[] { 0.99f, 0.1f }));
+        assertNull(service.reusableRetrieval(session, "nct2/4", new float[] { 0.99f, 0.1f }));
+        assertNull(service.reusableRetrieval(session, "nct1/4", new float[] { 0.0f, 1.0f }));
+    }
+
+    private static void awaitCompaction(ConversationSession session) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            synchronized (session) {
+                if (!session.compacting() && session.turns().size() == 1) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Conversation was not compacted");
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.pfizer.ai.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.pfizer.ai.rag.indexing.RAGChunkStore;
+
+public class RAGBasicProcessorServiceTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void chunkStoreContextStopsAtTheTokenBudget() {
+        var file = tempDir.resolve("study" + RAGChunkStore.FILE_EXTENSION);
+        RAGChunkStore.write(file, List.of(chunk("Inclusion criteria " + "adult ".repeat(40)),
+                chunk("Dosing " + "daily ".repeat(40)), chunk("Safety " + "visit ".repeat(40))), false);
+
+        assertEquals(1, customContext(file, 10).split("\n\n").length);
+        assertEquals(2, customContext(file, 100).split("\n\n").length);
+        assertEquals(3, customContext(file, 8000).split("\n\n").length);
+    }
+
+    private static String customContext(Path file, int contextTokenBudget) {
+        var service = new RAGBasicProcessorService();
+        ReflectionTestUtils.setField(service, "contextTokenBudget", contextTokenBudget);
+        return ReflectionTestUtils.invokeMethod(service, "retrieveCustomContext", file.toString());
+    }
+
+    private static Document chunk(String text) {
+        return new Document(text, Map.of());
+    }
+
+}